@@ -17,4 +17,11 @@ abstract public class AbstractDataDriver {
             final String weightColumn,
             final String priorityTable
     );
+
+    // Graph with the weight and distance of every edge, in this order
+    abstract public Pair<GraphWithWeights<Double>[], Mappings> loadGraphWithDistance(
+            final String network,
+            final String weightColumn,
+            final String distanceColumn
+    );
 }
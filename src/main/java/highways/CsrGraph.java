@@ -0,0 +1,276 @@
+package highways;
+
+import grph.Grph;
+import highways.utils.DoubleSparseFunction;
+import highways.utils.FixedPoint;
+import highways.utils.SparseFunction;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+public class CsrGraph implements ReadOnlyGraph {
+    private final int n;
+    private final int m;
+
+    // Forward star
+    private final int[] outOffsets;
+    private final int[] outHeads;
+    private final int[] outEdges;
+    // Either weights or units are stored
+    private final double[] outWeights;
+    private final int[] outUnits;
+
+    // Backward star
+    private final int[] inOffsets;
+    private final int[] inTails;
+    private final int[] inEdges;
+    private final double[] inWeights;
+    private final int[] inUnits;
+
+    private final FixedPoint fixedPoint;
+    private final boolean uniformWeights;
+
+    private CsrGraph(
+            final int n,
+            final int m,
+            final int[] tails,
+            final int[] heads,
+            final int[] edges,
+            final double[] weights,
+            final FixedPoint fixedPoint
+    ) {
+        this.n = n;
+        this.m = m;
+        this.fixedPoint = fixedPoint;
+
+        final int arcs = tails.length;
+
+        outOffsets = new int[n + 1];
+        outHeads = new int[arcs];
+        outEdges = new int[arcs];
+        outWeights = fixedPoint == null ? new double[arcs] : null;
+        outUnits = fixedPoint == null ? null : new int[arcs];
+
+        inOffsets = new int[n + 1];
+        inTails = new int[arcs];
+        inEdges = new int[arcs];
+        inWeights = fixedPoint == null ? new double[arcs] : null;
+        inUnits = fixedPoint == null ? null : new int[arcs];
+
+        boolean uniform = arcs > 0 && weights[0] > 0.0;
+
+        for (int i = 1; i < arcs && uniform; i++) {
+            uniform = weights[i] == weights[0];
+        }
+
+        uniformWeights = uniform;
+
+        // Counting sort of the arcs by tail (forward) and head (backward)
+        for (int i = 0; i < arcs; i++) {
+            outOffsets[tails[i] + 1]++;
+            inOffsets[heads[i] + 1]++;
+        }
+
+        for (int v = 0; v < n; v++) {
+            outOffsets[v + 1] += outOffsets[v];
+            inOffsets[v + 1] += inOffsets[v];
+        }
+
+        final int[] outPos = new int[n];
+        final int[] inPos = new int[n];
+
+        System.arraycopy(outOffsets, 0, outPos, 0, n);
+        System.arraycopy(inOffsets, 0, inPos, 0, n);
+
+        for (int i = 0; i < arcs; i++) {
+            final int o = outPos[tails[i]]++;
+            outHeads[o] = heads[i];
+            outEdges[o] = edges[i];
+
+            if (fixedPoint == null) {
+                outWeights[o] = weights[i];
+            } else {
+                outUnits[o] = fixedPoint.toUnits(weights[i]);
+            }
+
+            final int j = inPos[heads[i]]++;
+            inTails[j] = tails[i];
+            inEdges[j] = edges[i];
+
+            if (fixedPoint == null) {
+                inWeights[j] = weights[i];
+            } else {
+                inUnits[j] = fixedPoint.toUnits(weights[i]);
+            }
+        }
+    }
+
+    // One entry per arc, an undirected edge needs two arcs with the same edge id
+    public static CsrGraph fromArcs(
+            final int n,
+            final int m,
+            final int[] tails,
+            final int[] heads,
+            final int[] edges,
+            final double[] weights,
+            final FixedPoint fixedPoint
+    ) {
+        return new CsrGraph(n, m, tails, heads, edges, weights, fixedPoint);
+    }
+
+    public static CsrGraph fromGraph(final GraphWithWeights<Double> g) {
+        return fromGraph(g.graph, g.weights);
+    }
+
+    public static CsrGraph fromGraph(final Grph g, final SparseFunction<Integer, Double> weights) {
+        return fromGraph(g, weights, FixedPoint.fromSettings());
+    }
+
+    public static CsrGraph fromGraph(final Grph g, final SparseFunction<Integer, Double> weights, final FixedPoint fixedPoint) {
+        final int n = g.getNumberOfVertices();
+        final int m = g.getNumberOfEdges();
+        final DoubleSparseFunction doubleWeights = DoubleSparseFunction.of(weights, m);
+
+        // Kernels index their arrays by vertex and edge id, which requires the ids produced by simplify()
+        for (final int v: g.getVertices()) {
+            if (v >= n) {
+                throw new IllegalArgumentException("Vertex ids have to be contiguous, simplify the graph first");
+            }
+        }
+
+        for (final int e: g.getEdges()) {
+            if (e >= m) {
+                throw new IllegalArgumentException("Edge ids have to be contiguous, simplify the graph first");
+            }
+        }
+
+        final int arcs = 2 * g.getNumberOfUndirectedEdges() + g.getNumberOfDirectedEdges();
+
+        final int[] tails = new int[arcs];
+        final int[] heads = new int[arcs];
+        final int[] edges = new int[arcs];
+        final double[] w = new double[arcs];
+
+        int i = 0;
+
+        for (int e = 0; e < m; e++) {
+            final double weight = doubleWeights.applyAsDouble(e);
+
+            if (g.isDirectedSimpleEdge(e)) {
+                tails[i] = g.getDirectedSimpleEdgeTail(e);
+                heads[i] = g.getDirectedSimpleEdgeHead(e);
+                edges[i] = e;
+                w[i] = weight;
+                i++;
+            } else {
+                final IntSet endpoints = g.getVerticesIncidentToEdge(e);
+
+                if (endpoints.size() != 2) {
+                    throw new IllegalArgumentException("Only simple edges are allowed");
+                }
+
+                final IntIterator it = endpoints.iterator();
+                final int u = it.nextInt();
+                final int v = it.nextInt();
+
+                tails[i] = u;
+                heads[i] = v;
+                edges[i] = e;
+                w[i] = weight;
+                i++;
+
+                tails[i] = v;
+                heads[i] = u;
+                edges[i] = e;
+                w[i] = weight;
+                i++;
+            }
+        }
+
+        return new CsrGraph(n, m, tails, heads, edges, w, fixedPoint);
+    }
+
+    @Override
+    public int getNumberOfVertices() {
+        return n;
+    }
+
+    @Override
+    public int getNumberOfEdges() {
+        return m;
+    }
+
+    @Override
+    public int getNumberOfArcs() {
+        return outHeads.length;
+    }
+
+    @Override
+    public int getOutBegin(final int v) {
+        return outOffsets[v];
+    }
+
+    @Override
+    public int getOutEnd(final int v) {
+        return outOffsets[v + 1];
+    }
+
+    @Override
+    public int getOutHead(final int arc) {
+        return outHeads[arc];
+    }
+
+    @Override
+    public int getOutEdge(final int arc) {
+        return outEdges[arc];
+    }
+
+    @Override
+    public double getOutWeight(final int arc) {
+        return fixedPoint == null ? outWeights[arc] : fixedPoint.toWeight(outUnits[arc]);
+    }
+
+    @Override
+    public int getOutUnits(final int arc) {
+        return outUnits[arc];
+    }
+
+    @Override
+    public int getInBegin(final int v) {
+        return inOffsets[v];
+    }
+
+    @Override
+    public int getInEnd(final int v) {
+        return inOffsets[v + 1];
+    }
+
+    @Override
+    public int getInTail(final int arc) {
+        return inTails[arc];
+    }
+
+    @Override
+    public int getInEdge(final int arc) {
+        return inEdges[arc];
+    }
+
+    @Override
+    public double getInWeight(final int arc) {
+        return fixedPoint == null ? inWeights[arc] : fixedPoint.toWeight(inUnits[arc]);
+    }
+
+    @Override
+    public int getInUnits(final int arc) {
+        return inUnits[arc];
+    }
+
+    @Override
+    public boolean hasUniformWeights() {
+        return uniformWeights;
+    }
+
+    @Override
+    public FixedPoint getFixedPoint() {
+        return fixedPoint;
+    }
+}
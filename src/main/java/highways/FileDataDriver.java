@@ -46,4 +46,12 @@ public class FileDataDriver extends AbstractDataDriver {
         );
         return new Pair<>(simplified, priority);
     }
+
+    public Pair<GraphWithWeights<Double>[], Mappings> loadGraphWithDistance(
+            final String network,
+            final String weightColumn,
+            final String distanceColumn
+    ) {
+        throw new IllegalArgumentException("Edge files only have one weight");
+    }
 }
@@ -7,6 +7,7 @@ import highways.tasks.*;
 import highways.utils.GraphUtils;
 import highways.utils.MultiStopWatch;
 import highways.utils.Pair;
+import highways.utils.Shard;
 import highways.utils.SparseFunction;
 
 import java.io.File;
@@ -57,12 +58,25 @@ public class FileTasks {
             case "generate_random":
                 TaskGenerateRandom.run(driver, network, weightSelection);
                 return;
+            case "metrics":
+                TaskMetrics.run(driver, network, weightSelection);
+                return;
         }
 
         final Pair<GraphWithWeights<Double>, Mappings> p = driver.loadGraph(network, weightSelection);
-        final Iterable<Pair<Integer, Double>> edgeIterable = GraphUtils.runAlgorithm(algorithm, p);
+        final Pair<Iterable<Pair<Integer, Double>>, String> result = GraphUtils.runAlgorithm(algorithm, p);
+        final Iterable<Pair<Integer, Double>> edgeIterable = result.x;
 
         final String tableName = network + "_" + algorithm + "_" + weightSelection;
+        final Shard shard = Shard.fromSettings();
+
+        if (shard != null) {
+            System.out.println("To shard file " + shard.fileName(tableName));
+            EdgeFileLoader.storeShardEdgeWeights(tableName, shard, result.y, edgeIterable);
+            System.out.println("Done");
+            return;
+        }
+
         final String outFile = "results/" + tableName + ".wedge";
 
         System.out.println("To file " + outFile);
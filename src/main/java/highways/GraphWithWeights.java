@@ -3,6 +3,7 @@ package highways;
 import grph.Grph;
 import grph.VertexPair;
 import highways.utils.DoubleArraySparseFunction;
+import highways.utils.DoubleSparseFunction;
 import highways.utils.ExtendableDoubleArraySparseFunction;
 import highways.utils.Pair;
 import highways.utils.SparseFunction;
@@ -25,12 +26,42 @@ public class GraphWithWeights<W extends Number> {
         weights = w;
     }
 
+    public DoubleSparseFunction doubleWeights() {
+        if (weights instanceof DoubleSparseFunction) {
+            return (DoubleSparseFunction) weights;
+        }
+
+        int size = 0;
+
+        for (final int e: graph.getEdges()) {
+            size = Math.max(size, e + 1);
+        }
+
+        // Edge ids do not have to be contiguous before simplification, ids without an edge are never reached
+        final double[] array = new double[size];
+        Arrays.fill(array, Double.POSITIVE_INFINITY);
+
+        for (final int e: graph.getEdges()) {
+            final W value = weights.apply(e);
+
+            if (value == null) {
+                throw new IllegalArgumentException("Edge " + e + " has no weight");
+            }
+
+            array[e] = value.doubleValue();
+        }
+
+        return new DoubleArraySparseFunction(array, Double.POSITIVE_INFINITY);
+    }
+
     public void store(final String outFile) {
+        final DoubleSparseFunction w = doubleWeights();
+
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(outFile))) {
 
             for (VertexPair pair: graph.getEdgePairs()) {
                 for (int e: graph.getEdgesConnecting(pair.first, pair.second)) {
-                    double weight = weights.apply(e).doubleValue();
+                    double weight = w.applyAsDouble(e);
 
                     bw.write(String.format(
                         Locale.ROOT,
@@ -47,6 +78,7 @@ public class GraphWithWeights<W extends Number> {
 
     public Pair<GraphWithWeights<Double>, IntList> simplify() {
         final ArrayList<Double> w = new ArrayList<>();
+        final DoubleSparseFunction originalWeights = doubleWeights();
         final Set<Pair<Integer, Integer>> visitedPairs = new HashSet<>();
         final Grph g = new FixedGrph();
         final IntList edgeMapping = new IntArrayList();
@@ -64,7 +96,7 @@ public class GraphWithWeights<W extends Number> {
                     final IntSet edges = LucIntSets.intersection(graph.getOutEdges(u), graph.getInEdges(v));
                     //final IntSet edges = graph.getEdgesConnecting(u, v);
                     final Pair<Integer, Double> minEdge = edges.stream()
-                            .map(e -> new Pair<>(e, weights.apply(e).doubleValue()))
+                            .map(e -> new Pair<>(e, originalWeights.applyAsDouble(e)))
                             .min(Comparator.comparing(p -> p.y))
                             .get();
 
@@ -101,6 +133,7 @@ public class GraphWithWeights<W extends Number> {
         final Long2IntMap nodeMapping = new Long2IntOpenHashMap(originalMappings.nodeMapping.size());
 
         ArrayList<Double> w = new ArrayList<>();
+        final DoubleSparseFunction originalWeights = doubleWeights();
         Set<Pair<Integer, Integer>> visitedPairs = new HashSet<>();
         final Grph g = new FixedGrph();
 
@@ -134,7 +167,7 @@ public class GraphWithWeights<W extends Number> {
 
                     final IntSet edges = LucIntSets.intersection(graph.getOutEdges(u), graph.getInEdges(v));
                     final Pair<Integer, Double> minEdge = edges.stream()
-                            .map(e -> new Pair<>(e, weights.apply(e).doubleValue()))
+                            .map(e -> new Pair<>(e, originalWeights.applyAsDouble(e)))
                             .min(Comparator.comparing(p -> p.y))
                             .get();
 
@@ -18,6 +18,9 @@ public class Main {
             case "postgres":
                 PostgresTasks.main(subArgs);
                 break;
+            case "merge":
+                MergeTasks.main(subArgs);
+                break;
             default:
                 printHelp();
         }
@@ -27,5 +30,6 @@ public class Main {
         System.out.println("Usage:");
         FileTasks.printCommandHelp();
         PostgresTasks.printCommandHelp();
+        MergeTasks.printCommandHelp();
     }
 }
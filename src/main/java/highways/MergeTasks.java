@@ -0,0 +1,91 @@
+package highways;
+
+import highways.loaders.EdgeFileLoader;
+import highways.loaders.PostgresLoader;
+import highways.utils.Pair;
+import highways.utils.Shard;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+// Sums the partial results of a sharded run (HIGHWAYS_SHARD) and stores them like an unsharded run
+public class MergeTasks {
+    public static void printHelp() {
+        System.out.println("Usage:");
+        printCommandHelp();
+    }
+    public static void printCommandHelp() {
+        System.out.println("\tmerge TABLE_NAME SHARD_COUNT [POSTGRES_URL POSTGRES_USER]");
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            printHelp();
+            return;
+        }
+
+        final String tableName = args[0];
+        final int count = Integer.parseInt(args[1]);
+
+        final Int2DoubleMap sum = new Int2DoubleOpenHashMap();
+        String run = null;
+
+        for (int index = 0; index < count; index++) {
+            final Shard shard = new Shard(index, count);
+
+            System.out.println("Read " + shard.fileName(tableName));
+            final String shardRun = EdgeFileLoader.loadShardEdgeWeights(tableName, shard, sum);
+
+            // Shards of another graph or kernel configuration do not add up to one run
+            if (run == null) {
+                run = shardRun;
+            } else if (!run.equals(shardRun)) {
+                throw new IllegalStateException(String.format(
+                        "Shard %s was computed by run %s, shard 0 by run %s",
+                        shard.fileName(tableName),
+                        shardRun,
+                        run
+                ));
+            }
+        }
+
+        final List<Pair<Integer, Double>> edges = new ArrayList<>(sum.size());
+
+        for (final Int2DoubleMap.Entry entry: sum.int2DoubleEntrySet()) {
+            edges.add(new Pair<>(entry.getIntKey(), entry.getDoubleValue()));
+        }
+
+        edges.sort((a, b) -> Integer.compare(a.x, b.x));
+
+        final String outFile = "results/" + tableName + ".wedge";
+
+        System.out.println("To file " + outFile);
+        EdgeFileLoader.storeEdgeWeights(outFile, edges);
+
+        if (args.length > 3) {
+            String password = System.getenv("POSTGRES_PASSWORD");
+
+            if (password == null) {
+                System.out.println("Password: ");
+                password = new Scanner(System.in).next();
+            }
+
+            System.out.println("To DB");
+
+            try {
+                final Connection c = new PostgresDataDriver(args[2], args[3], password).getConnection();
+                PostgresLoader.storeEdgeWeights(c, tableName, edges);
+                c.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+
+        System.out.println("Done");
+    }
+}
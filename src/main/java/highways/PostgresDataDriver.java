@@ -65,4 +65,23 @@ public class PostgresDataDriver extends AbstractDataDriver {
 
         return new Pair<>(simplified, priority);
     }
+
+    public Pair<GraphWithWeights<Double>[], Mappings> loadGraphWithDistance(
+            final String network,
+            final String weightColumn,
+            final String distanceColumn
+    ) {
+        final Pair<GraphWithWeights<Double>[], Mappings> p;
+
+        try {
+            final Connection c = getConnection();
+            p = PostgresLoader.load(c, network, new String[]{weightColumn, distanceColumn});
+            c.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException();
+        }
+
+        return p;
+    }
 }
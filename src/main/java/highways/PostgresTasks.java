@@ -8,6 +8,7 @@ import highways.tasks.*;
 import highways.utils.GraphUtils;
 import highways.utils.MultiStopWatch;
 import highways.utils.Pair;
+import highways.utils.Shard;
 import highways.utils.SparseFunction;
 
 import java.sql.Connection;
@@ -68,9 +69,12 @@ public class PostgresTasks {
             case "generate_random":
                 TaskGenerateRandom.run(driver, network, weightColumn);
                 return;
+            case "metrics":
+                TaskMetrics.run(driver, network, weightColumn);
+                return;
         }
 
-        final Iterable<Pair<Integer, Double>> edgeIterable;
+        final Pair<Iterable<Pair<Integer, Double>>, String> result;
 
         if ("phd".equals(algorithm)) {
             final Pair<GraphWithWeights<Double>[], Mappings> p;
@@ -83,20 +87,30 @@ public class PostgresTasks {
                 return;
             }
 
-            edgeIterable = GraphUtils.runTwoWeightAlgorithm(algorithm, p);
+            result = GraphUtils.runTwoWeightAlgorithm(algorithm, p);
         } else {
             final Pair<GraphWithWeights<Double>, Mappings> p = driver.loadGraph(network, weightColumn);
-            edgeIterable = GraphUtils.runAlgorithm(algorithm, p);
+            result = GraphUtils.runAlgorithm(algorithm, p);
         }
 
-        if (edgeIterable == null) {
+        if (result == null) {
             System.out.println("Exit without result");
             return;
         }
 
+        final Iterable<Pair<Integer, Double>> edgeIterable = result.x;
+
         System.out.println("Store results");
 
         final String tableName = network + "_" + algorithm + "_" + weightColumn;
+        final Shard shard = Shard.fromSettings();
+
+        if (shard != null) {
+            System.out.println("To shard file " + shard.fileName(tableName));
+            EdgeFileLoader.storeShardEdgeWeights(tableName, shard, result.y, edgeIterable);
+            System.out.println("Done");
+            return;
+        }
 
         System.out.println("To file");
         EdgeFileLoader.storeEdgeWeights("results/" + tableName + ".wedge", edgeIterable);
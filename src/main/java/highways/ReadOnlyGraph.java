@@ -0,0 +1,62 @@
+package highways;
+
+import highways.utils.FixedPoint;
+
+// Frozen adjacency view used by the shortest path kernels.
+// Vertices are 0..n-1, edges are 0..m-1. Every edge is stored as one arc per direction it can be
+// traversed in, so an undirected edge appears as two arcs sharing the same edge id.
+public interface ReadOnlyGraph {
+    int getNumberOfVertices();
+    int getNumberOfEdges();
+    int getNumberOfArcs();
+
+    // Arcs leaving v are getOutBegin(v) until (exclusive) getOutEnd(v)
+    int getOutBegin(final int v);
+    int getOutEnd(final int v);
+    int getOutHead(final int arc);
+    int getOutEdge(final int arc);
+    double getOutWeight(final int arc);
+
+    // Arcs entering v are getInBegin(v) until (exclusive) getInEnd(v)
+    int getInBegin(final int v);
+    int getInEnd(final int v);
+    int getInTail(final int arc);
+    int getInEdge(final int arc);
+    double getInWeight(final int arc);
+
+    // Non-null if the weights are stored as integer units, which can then be read by getOutUnits and getInUnits
+    default FixedPoint getFixedPoint() {
+        return null;
+    }
+
+    default int getOutUnits(final int arc) {
+        throw new IllegalStateException("Weights are not fixed-point");
+    }
+
+    default int getInUnits(final int arc) {
+        throw new IllegalStateException("Weights are not fixed-point");
+    }
+
+    // True if all weights are the same positive value, so shortest paths are paths with the fewest arcs
+    default boolean hasUniformWeights() {
+        return false;
+    }
+
+    default int getOutDegree(final int v) {
+        return getOutEnd(v) - getOutBegin(v);
+    }
+
+    default int getInDegree(final int v) {
+        return getInEnd(v) - getInBegin(v);
+    }
+
+    default int getSomeEdgeConnecting(final int u, final int v) {
+        for (int i = getOutBegin(u); i < getOutEnd(u); i++) {
+            if (getOutHead(i) == v) {
+                return getOutEdge(i);
+            }
+        }
+
+        return -1;
+    }
+}
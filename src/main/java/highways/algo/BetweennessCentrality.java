@@ -1,166 +1,204 @@
 package highways.algo;
 
 import grph.Grph;
-import highways.utils.MapSparseFunction;
-import highways.utils.Pair;
-import highways.utils.ProgressCounter;
+import highways.CsrGraph;
+import highways.ReadOnlyGraph;
+import highways.utils.Accumulator;
+import highways.utils.DenseAccumulator;
+import highways.utils.DoubleArraySparseFunction;
+import highways.utils.Settings;
 import highways.utils.SparseFunction;
-import it.unimi.dsi.fastutil.ints.*;
 
-import java.util.Comparator;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Stack;
-
-public class BetweennessCentrality {
-    protected final Grph g;
-    protected final SparseFunction<Integer, Double> weights;
+public class BetweennessCentrality implements SourceKernel {
+    protected final ReadOnlyGraph g;
+    // One exploration workspace per worker thread, reused for all of its sources
+    protected final ThreadLocal<ShortestPathDag> workspace;
+    // Multi-source search for uniform weights, it needs WIDTH times the memory of a single source workspace
+    protected final boolean multiSource;
+    protected final ThreadLocal<MultiSourceBfs> batchWorkspace;
+    // Searches over compressed chains, null to search the graph directly
+    protected final ThreadLocal<ChainSearch> chainWorkspace;
+    // Ranks of SymmetricPairs to count every pair of an undirected graph once, null to count all targets
+    protected final int[] rank;
 
     public BetweennessCentrality(final Grph g, final SparseFunction<Integer, Double> weights) {
-        this.g = g;
-        this.weights = weights;
+        this(CsrGraph.fromGraph(g, weights));
     }
 
-    public SparseFunction<Integer, Double> compute() {
-        final int n = g.getNumberOfVertices();
+    public BetweennessCentrality(final ReadOnlyGraph g) {
+        this(g, null);
+    }
 
-        final Int2DoubleMap betweenness = new Int2DoubleOpenHashMap(n);
-        betweenness.defaultReturnValue(0.0);
+    public BetweennessCentrality(final ReadOnlyGraph g, final ChainCompression chains) {
+        this(g, chains, null);
+    }
 
-        for (final int s: g.getVertices()) {
-            accumulate(betweenness, s);
+    public BetweennessCentrality(final ReadOnlyGraph g, final ChainCompression chains, final SymmetricPairs pairs) {
+        this(g, chains, pairs, Settings.getBoolean("HIGHWAYS_MULTI_SOURCE_BFS", false));
+    }
+
+    // Multi-source search on uniform weights regardless of HIGHWAYS_MULTI_SOURCE_BFS
+    BetweennessCentrality(
+            final ReadOnlyGraph g,
+            final ChainCompression chains,
+            final SymmetricPairs pairs,
+            final boolean multiSource
+    ) {
+        if (chains != null && pairs != null) {
+            throw new IllegalArgumentException("Ranked searches do not run over compressed chains");
+        }
+
+        this.g = g;
+        this.workspace = ThreadLocal.withInitial(() -> new ShortestPathDag(g));
+        this.multiSource = multiSource && g.hasUniformWeights();
+
+        if (multiSource) {
+            MultiSourceBfs.checkSize(g.getNumberOfVertices());
         }
 
-        return new MapSparseFunction<>(betweenness);
+        this.batchWorkspace = ThreadLocal.withInitial(() -> new MultiSourceBfs(g, false));
+        this.chainWorkspace = chains == null ? null : ThreadLocal.withInitial(() -> new ChainSearch(chains));
+        this.rank = pairs == null ? null : pairs.rank;
     }
 
-    Int2DoubleMap computePartial(final int s) {
-        final int n = g.getNumberOfVertices();
+    @Override
+    public int getBatchSize() {
+        return multiSource ? MultiSourceBfs.WIDTH : 1;
+    }
 
-        final Int2DoubleMap partialBetweenness = new Int2DoubleOpenHashMap(n);
-        partialBetweenness.defaultReturnValue(0.0);
-        accumulate(partialBetweenness, s);
+    // A ranked search counts only a part of the pairs of its source
+    @Override
+    public String getConfiguration() {
+        return rank == null ? getClass().getSimpleName() : getClass().getSimpleName() + " symmetric";
+    }
 
-        return partialBetweenness;
+    @Override
+    public int getResultSize() {
+        return g.getNumberOfVertices();
     }
 
-    Pair<Pair<IntList[], Stack<Integer>>, int[]> computeExploration(final int s) {
+    public SparseFunction<Integer, Double> compute() {
         final int n = g.getNumberOfVertices();
 
-        // Initialization
-        final boolean[] settled = new boolean[n];
-        final double[] totalWeight = new double[n];
-        final int[] sigma = new int[n];
+        final DenseAccumulator betweenness = new DenseAccumulator(getResultSize());
 
-        final IntList[] pred = new IntArrayList[n];
-
-        for (int i = 0; i < n; i++) {
-            totalWeight[i] = Double.POSITIVE_INFINITY;
-            pred[i] = new IntArrayList(1);
+        for (int s = 0; s < n; s++) {
+            accumulate(betweenness, s);
         }
 
-        final Stack<Integer> S = new Stack<>();
+        return new DoubleArraySparseFunction(betweenness.values);
+    }
 
-        Queue<Pair<Integer, Double>> Q = new PriorityQueue<>(Comparator.comparingDouble(o -> o.y));
+    MultiSourceBfs computeExploration(final int[] sources, final int begin, final int end) {
+        final MultiSourceBfs bfs = batchWorkspace.get();
+        bfs.compute(g, sources, begin, end, null);
 
-        totalWeight[s] = 0.0;
-        sigma[s] = 1;
+        return bfs;
+    }
 
-        Q.add(new Pair<>(s, totalWeight[s]));
+    ShortestPathDag computeExploration(final int s) {
+        if (chainWorkspace != null) {
+            return chainWorkspace.get().compute(s, null);
+        }
 
-        while (!Q.isEmpty()) {
-            final int v = Q.remove().x;
+        final ShortestPathDag dag = workspace.get();
 
-            if (settled[v]) {
-                continue;
-            }
+        if (rank != null) {
+            dag.computeRanked(g, s, null, rank);
+        } else {
+            dag.compute(g, s, null);
+        }
 
-            settled[v] = true;
-            S.add(v);
+        return dag;
+    }
 
-            final double wv = totalWeight[v];
+    public SparseFunction<Integer, Double> computeParallel() {
+        return computeParallel(SourceScheduler.fromSettings(g));
+    }
 
-            for (final int e: g.getOutEdges(v)) {
-                final IntSet endpoints = g.getVerticesAccessibleThrough(v, e);
+    public SparseFunction<Integer, Double> computeParallel(final SourceScheduler scheduler) {
+        return new DoubleArraySparseFunction(scheduler.run(this, g.getNumberOfVertices()));
+    }
 
-                if (endpoints.size() != 1) {
-                    throw new IllegalStateException("Only simple edges are allowed");
-                }
+    // Pairs (s, w) counted by the source s, twice for the pairs of a ranked search and not at all for the others
+    final double pairCount(final int s, final int w) {
+        if (rank == null) {
+            return 1.0;
+        }
 
-                final int w = endpoints.iterator().nextInt();
-                final double potentialWeight = wv + weights.apply(e);
+        return rank[w] > rank[s] ? 2.0 : 0.0;
+    }
 
-                // Path discovery
-                if (totalWeight[w] > potentialWeight) {
-                    totalWeight[w] = potentialWeight;
-                    Q.add(new Pair<>(w, potentialWeight));
-                    sigma[w] = 0;
-                    pred[w] = new IntArrayList(1);
-                }
+    @Override
+    public void accumulate(
+            final Accumulator betweenness,
+            final int s
+    ) {
+        final ShortestPathDag dag = computeExploration(s);
+        final double[] sigma = dag.sigma;
+        final double[] d = dag.delta;
+
+        for (int k = dag.size - 1; k >= 0; k--) {
+            final int w = dag.order[k];
+            final double pairs = pairCount(s, w);
+
+            for (int l = dag.predFirst[w]; l != -1; l = dag.predNext[l]) {
+                final int v = dag.predVertex[l];
+                final double c = sigma[v] / sigma[w] * (pairs + d[w]);
+                d[v] += c;
+            }
 
-                // Path counting
-                // If s=w and d(v)=0 and c(v,w)=0, it can happen that you end up here
-                if (totalWeight[w] == potentialWeight && w != s) {
-                    sigma[w] += sigma[v];
-                    pred[w].add(v);
-                }
+            if (w != s) {
+                betweenness.add(w, d[w]);
             }
         }
-
-        return new Pair<>(new Pair<>(pred, S), sigma);
     }
 
-    public SparseFunction<Integer, Double> computeParallel() {
-        final int n = g.getNumberOfVertices();
-
-        final ProgressCounter counter = new ProgressCounter(n);
-        counter.start();
+    @Override
+    public void accumulateBatch(
+            final Accumulator betweenness,
+            final int[] sources,
+            final int begin,
+            final int end
+    ) {
+        if (!multiSource) {
+            SourceKernel.super.accumulateBatch(betweenness, sources, begin, end);
+            return;
+        }
 
-        Int2DoubleMap betweenness = g.getVertices().parallelStream()
-                .map(this::computePartial)
-                .map(counter.relayCount())
-                .reduce((a, b) -> {
-                    final Int2DoubleMap sum = new Int2DoubleOpenHashMap(n);
-                    sum.defaultReturnValue(0.0);
+        final MultiSourceBfs bfs = computeExploration(sources, begin, end);
+        final int W = MultiSourceBfs.WIDTH;
+        final double[] sigma = bfs.sigma;
+        final double[] d = bfs.delta;
 
-                    for (final int i: a.keySet()) {
-                        sum.put(i, sum.get(i) + a.get(i));
-                    }
+        // Level by level from the deepest, predecessors of w are the in-neighbors one level above in the same lane
+        for (int level = bfs.levels - 1; level >= 1; level--) {
+            bfs.markLevel(level - 1);
 
-                    for (final int i: b.keySet()) {
-                        sum.put(i, sum.get(i) + b.get(i));
-                    }
+            for (int k = bfs.levelBegin[level]; k < bfs.levelBegin[level + 1]; k++) {
+                final int w = bfs.entryVertex[k];
+                final long mw = bfs.entryMask[k];
 
-                    return sum;
-                }).get();
+                for (int i = g.getInBegin(w); i < g.getInEnd(w); i++) {
+                    final int v = g.getInTail(i);
 
-        return new MapSparseFunction<>(betweenness);
-    }
+                    for (long mask = mw & bfs.levelMask[v]; mask != 0; mask &= mask - 1) {
+                        final int l = Long.numberOfTrailingZeros(mask);
 
-    private void accumulate(
-            final Int2DoubleMap betweenness,
-            final int s
-    ) {
-        final int n = g.getNumberOfVertices();
-        final Pair<Pair<IntList[], Stack<Integer>>, int[]> result = computeExploration(s);
-        final IntList[] pred = result.x.x;
-        final Stack<Integer> S = result.x.y;
-        final int[] sigma = result.y;
+                        d[v * W + l] += sigma[v * W + l] / sigma[w * W + l] * (1.0 + d[w * W + l]);
+                    }
+                }
 
-        final Int2DoubleMap d = new Int2DoubleOpenHashMap(n);
-        d.defaultReturnValue(0.0);
+                double sum = 0.0;
 
-        while (!S.isEmpty()) {
-            final int w = S.pop();
+                for (long mask = mw; mask != 0; mask &= mask - 1) {
+                    sum += d[w * W + Long.numberOfTrailingZeros(mask)];
+                }
 
-            for (final int v: pred[w]) {
-                final double c = (double)sigma[v] / (double)sigma[w] * (1.0 + d.get(w));
-                d.put(v, d.get(v) + c);
+                betweenness.add(w, sum);
             }
 
-            if (w != s) {
-                betweenness.put(w, betweenness.get(w) + d.get(w));
-            }
+            bfs.unmarkLevel(level - 1);
         }
     }
 }
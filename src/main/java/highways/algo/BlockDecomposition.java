@@ -0,0 +1,289 @@
+package highways.algo;
+
+import highways.CsrGraph;
+import highways.ReadOnlyGraph;
+
+// Biconnected components (blocks) of the undirected graph underlying g, found by an iterative Tarjan search.
+// Two blocks share at most one vertex, an articulation point, and every path between blocks passes through the
+// articulation points on the way in the block-cut tree. A shortest path therefore only runs inside a block
+// between the vertices where it enters and leaves it, which lets every block be solved on its own with the rest
+// of the graph folded into the weights of its articulation points.
+//
+// Every block gets its own graph with local vertex ids and the original edge ids. Local id 0 is the articulation
+// point the block hangs from in the depth-first search, the other vertices are those first reached in this block.
+public class BlockDecomposition {
+    public final ReadOnlyGraph graph;
+    public final int numBlocks;
+    public final CsrGraph[] blocks;
+    // Vertex of local id l in block b is blockVertices[blockBegin[b] + l]
+    public final int[] blockBegin;
+    public final int[] blockVertices;
+    // Vertices a shortest path entering or leaving block b at local id l stands for, same layout as blockVertices
+    public final int[] weight;
+    private final boolean stronglyConnected;
+
+    public BlockDecomposition(final ReadOnlyGraph g) {
+        final int n = g.getNumberOfVertices();
+
+        this.graph = g;
+
+        final int[] discovered = new int[n];
+        final int[] low = new int[n];
+        final int[] parentEdge = new int[n];
+        final int[] next = new int[n];
+        final int[] callStack = new int[n];
+        final int[] vertexStack = new int[n];
+
+        // Block a vertex was first reached in (its home) and its local id there, -1 for search roots
+        final int[] home = new int[n];
+        final int[] localId = new int[n];
+        // Vertices below v in the block-cut tree
+        final long[] hanging = new long[n];
+
+        // At most n - 1 blocks
+        final int[] top = new int[Math.max(1, n)];
+        final int[] begin = new int[Math.max(1, n) + 1];
+        final int[] vertices = new int[2 * n];
+        final long[] size = new long[Math.max(1, n)];
+        final int[] component = new int[Math.max(1, n)];
+        final int[] componentSize = new int[Math.max(1, n)];
+        int numComponents = 0;
+        int b = 0;
+        int slots = 0;
+        int time = 0;
+
+        boolean strong = true;
+
+        for (int v = 0; v < n; v++) {
+            discovered[v] = -1;
+            home[v] = -1;
+        }
+
+        for (int root = 0; root < n; root++) {
+            if (discovered[root] != -1) {
+                continue;
+            }
+
+            int calls = 0;
+            int stacked = 0;
+            final int firstBlock = b;
+            final int firstTime = time;
+
+            discovered[root] = low[root] = time++;
+            parentEdge[root] = -1;
+            next[root] = 0;
+            callStack[calls++] = root;
+
+            while (calls > 0) {
+                final int v = callStack[calls - 1];
+                final int outDegree = g.getOutDegree(v);
+
+                // Neighbors over out-arcs, then over in-arcs
+                if (next[v] < outDegree + g.getInDegree(v)) {
+                    final int k = next[v]++;
+                    final int w = k < outDegree ? g.getOutHead(g.getOutBegin(v) + k) : g.getInTail(g.getInBegin(v) + k - outDegree);
+                    final int e = k < outDegree ? g.getOutEdge(g.getOutBegin(v) + k) : g.getInEdge(g.getInBegin(v) + k - outDegree);
+
+                    // Both arcs of the tree edge are skipped, parallel edges are back edges
+                    if (e == parentEdge[v]) {
+                        continue;
+                    }
+
+                    if (discovered[w] == -1) {
+                        discovered[w] = low[w] = time++;
+                        parentEdge[w] = e;
+                        next[w] = 0;
+                        callStack[calls++] = w;
+                        vertexStack[stacked++] = w;
+                    } else {
+                        low[v] = Math.min(low[v], discovered[w]);
+                    }
+
+                    continue;
+                }
+
+                calls--;
+
+                if (calls == 0) {
+                    break;
+                }
+
+                final int p = callStack[calls - 1];
+                low[p] = Math.min(low[p], low[v]);
+
+                if (low[v] >= discovered[p]) {
+                    // p separates the vertices stacked since v from the rest, they form a block with p
+                    top[b] = p;
+                    begin[b] = slots;
+                    vertices[slots++] = p;
+
+                    long blockSize = 0;
+                    int w;
+
+                    do {
+                        w = vertexStack[--stacked];
+                        home[w] = b;
+                        localId[w] = slots - begin[b];
+                        vertices[slots++] = w;
+                        blockSize += 1 + hanging[w];
+                    } while (w != v);
+
+                    size[b] = blockSize;
+                    hanging[p] += blockSize;
+                    component[b] = numComponents;
+                    b++;
+                }
+            }
+
+            componentSize[numComponents] = time - firstTime;
+
+            if (b > firstBlock) {
+                strong &= reachesAll(g, root, time - firstTime, true) && reachesAll(g, root, time - firstTime, false);
+            }
+
+            numComponents++;
+        }
+
+        begin[b] = slots;
+
+        this.numBlocks = b;
+        this.stronglyConnected = strong;
+        this.blockBegin = new int[b + 1];
+        this.blockVertices = new int[slots];
+        this.weight = new int[slots];
+
+        System.arraycopy(begin, 0, blockBegin, 0, b + 1);
+        System.arraycopy(vertices, 0, blockVertices, 0, slots);
+
+        for (int c = 0; c < b; c++) {
+            weight[blockBegin[c]] = (int) (componentSize[component[c]] - size[c]);
+
+            for (int k = blockBegin[c] + 1; k < blockBegin[c + 1]; k++) {
+                weight[k] = (int) (1 + hanging[blockVertices[k]]);
+            }
+        }
+
+        // Arcs of every block, an arc belongs to the block that contains both of its ends
+        final int[] arcs = new int[b + 1];
+        final int[] arcBlock = new int[g.getNumberOfArcs()];
+        int arc = 0;
+
+        for (int u = 0; u < n; u++) {
+            for (int i = g.getOutBegin(u); i < g.getOutEnd(u); i++, arc++) {
+                arcBlock[arc] = blockOf(g.getOutHead(i), u, home, top);
+
+                if (arcBlock[arc] != -1) {
+                    arcs[arcBlock[arc]]++;
+                }
+            }
+        }
+
+        blocks = new CsrGraph[b];
+
+        final int[][] tails = new int[b][];
+        final int[][] heads = new int[b][];
+        final int[][] edges = new int[b][];
+        final double[][] weights = new double[b][];
+        final int[] filled = new int[b];
+
+        for (int c = 0; c < b; c++) {
+            tails[c] = new int[arcs[c]];
+            heads[c] = new int[arcs[c]];
+            edges[c] = new int[arcs[c]];
+            weights[c] = new double[arcs[c]];
+        }
+
+        arc = 0;
+
+        for (int u = 0; u < n; u++) {
+            for (int i = g.getOutBegin(u); i < g.getOutEnd(u); i++, arc++) {
+                final int c = arcBlock[arc];
+
+                if (c == -1) {
+                    continue;
+                }
+
+                final int v = g.getOutHead(i);
+                final int j = filled[c]++;
+
+                tails[c][j] = top[c] == u ? 0 : localId[u];
+                heads[c][j] = top[c] == v ? 0 : localId[v];
+                edges[c][j] = g.getOutEdge(i);
+                weights[c][j] = g.getOutWeight(i);
+            }
+        }
+
+        for (int c = 0; c < b; c++) {
+            blocks[c] = CsrGraph.fromArcs(
+                    blockBegin[c + 1] - blockBegin[c],
+                    g.getNumberOfEdges(),
+                    tails[c],
+                    heads[c],
+                    edges[c],
+                    weights[c],
+                    g.getFixedPoint()
+            );
+        }
+    }
+
+    // Block containing both u and v, -1 for self loops
+    private static int blockOf(final int u, final int v, final int[] home, final int[] top) {
+        if (u == v) {
+            return -1;
+        }
+
+        if (home[u] != -1 && home[u] == home[v]) {
+            return home[u];
+        }
+
+        if (home[v] != -1 && top[home[v]] == u) {
+            return home[v];
+        }
+
+        return home[u];
+    }
+
+    private static boolean reachesAll(final ReadOnlyGraph g, final int root, final int count, final boolean forward) {
+        final boolean[] seen = new boolean[g.getNumberOfVertices()];
+        final int[] queue = new int[count];
+        int size = 0;
+
+        seen[root] = true;
+        queue[size++] = root;
+
+        for (int head = 0; head < size; head++) {
+            final int v = queue[head];
+            final int end = forward ? g.getOutEnd(v) : g.getInEnd(v);
+
+            for (int i = forward ? g.getOutBegin(v) : g.getInBegin(v); i < end; i++) {
+                final int w = forward ? g.getOutHead(i) : g.getInTail(i);
+
+                if (!seen[w]) {
+                    seen[w] = true;
+                    queue[size++] = w;
+                }
+            }
+        }
+
+        return size == count;
+    }
+
+    // Only then all vertices folded into an articulation point are reachable through it in both directions
+    public boolean isStronglyConnected() {
+        return stronglyConnected;
+    }
+
+    public int getNumberOfSources() {
+        return blockBegin[numBlocks];
+    }
+
+    public int getLargestBlock() {
+        int largest = 0;
+
+        for (int c = 0; c < numBlocks; c++) {
+            largest = Math.max(largest, blockBegin[c + 1] - blockBegin[c]);
+        }
+
+        return largest;
+    }
+}
@@ -0,0 +1,58 @@
+package highways.algo;
+
+import highways.utils.Accumulator;
+
+import java.util.Arrays;
+
+// Edge betweenness from the blocks of a BlockDecomposition.
+// A pair (s, t) crosses block b between the vertices where its paths enter and leave b, so the edges of b get the
+// dependencies of all pairs of block vertices, each weighted by the vertices it stands for. Sources are numbered
+// through all blocks: source i is local vertex i - blockBegin[b] of block b, so a search never leaves its block.
+public class BlockEdgeBetweenness implements SourceKernel {
+    private final BlockDecomposition blocks;
+    // Sized for the whole graph, which is at least as large as every block
+    private final ThreadLocal<ShortestPathDag> workspace;
+
+    public BlockEdgeBetweenness(final BlockDecomposition blocks) {
+        if (!blocks.isStronglyConnected()) {
+            throw new IllegalArgumentException("Blocks only separate shortest paths in strongly connected graphs");
+        }
+
+        this.blocks = blocks;
+        this.workspace = ThreadLocal.withInitial(() -> new ShortestPathDag(blocks.graph));
+    }
+
+    @Override
+    public int getResultSize() {
+        return blocks.graph.getNumberOfEdges();
+    }
+
+    @Override
+    public void accumulate(final Accumulator betweenness, final int source) {
+        final int found = Arrays.binarySearch(blocks.blockBegin, 0, blocks.numBlocks, source);
+        // The last block starting at or before source, blocks are never empty
+        final int b = found >= 0 ? found : -found - 2;
+        final int offset = blocks.blockBegin[b];
+        final int[] weight = blocks.weight;
+
+        final ShortestPathDag dag = workspace.get();
+        dag.compute(blocks.blocks[b], source - offset, null);
+
+        final double[] sigma = dag.sigma;
+        final double[] d = dag.delta;
+        final double sourceWeight = weight[source];
+
+        for (int k = dag.size - 1; k >= 0; k--) {
+            final int w = dag.order[k];
+
+            for (int l = dag.predFirst[w]; l != -1; l = dag.predNext[l]) {
+                final int v = dag.predVertex[l];
+                final int e = dag.predEdge[l];
+                final double c = sigma[v] / sigma[w] * (weight[offset + w] + d[w]);
+
+                d[v] += c;
+                betweenness.add(e, sourceWeight * c);
+            }
+        }
+    }
+}
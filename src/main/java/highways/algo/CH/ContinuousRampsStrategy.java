@@ -0,0 +1,39 @@
+package highways.algo.CH;
+
+import highways.GraphWithWeights;
+import highways.utils.SparseFunction;
+
+// Ramps as in SimpleRampsStrategy, ordered by the summed priority of their incident edges of the original graph.
+// Without updates, vertices keep the class they have in the original graph.
+public class ContinuousRampsStrategy implements OrderingStrategy {
+    private final double[] vertexWeights;
+    private final boolean updating;
+
+    public ContinuousRampsStrategy(
+            final GraphWithWeights<Double> g,
+            final SparseFunction<Integer, Double> priority,
+            final boolean updating
+    ) {
+        this.vertexWeights = new double[g.graph.getNumberOfVertices()];
+        this.updating = updating;
+
+        for (final int v: g.graph.getVertices()) {
+            vertexWeights[v] = g.graph.getEdgesIncidentTo(v).stream().mapToDouble(priority::apply).sum();
+        }
+    }
+
+    @Override
+    public boolean isRamp(final ContractionGraph g, final int v) {
+        return g.getEdgeDegree(v) > 2;
+    }
+
+    @Override
+    public double priority(final ContractionGraph g, final int v) {
+        return vertexWeights[v];
+    }
+
+    @Override
+    public boolean updatesNeighbors() {
+        return updating;
+    }
+}
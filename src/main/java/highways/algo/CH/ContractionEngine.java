@@ -0,0 +1,434 @@
+package highways.algo.CH;
+
+import highways.GraphWithWeights;
+import highways.utils.IndexedDaryHeap;
+import highways.utils.ProgressCounter;
+import highways.utils.Settings;
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+// Contracts all vertices of a graph in the order of an OrderingStrategy
+public class ContractionEngine {
+    // Vertices a worker takes at once in parallel rounds
+    private static final int PARALLEL_CHUNK = 64;
+
+    // Addressable queue of the remaining vertices, ramps in a heap of their own that is only polled once all
+    // other vertices are contracted
+    private static class ContractionQueue {
+        final IndexedDaryHeap others;
+        final IndexedDaryHeap ramps;
+        final boolean[] ramp;
+        // Heaps break ties by id, so they hold positions in the scattered order instead
+        final int[] slot;
+        final int[] vertexAt;
+
+        ContractionQueue(final int n) {
+            others = new IndexedDaryHeap(4, n);
+            ramps = new IndexedDaryHeap(4, n);
+            ramp = new boolean[n];
+            slot = scatteredOrder(n);
+            vertexAt = new int[n];
+
+            for (int v = 0; v < n; v++) {
+                vertexAt[slot[v]] = v;
+            }
+        }
+
+        boolean isEmpty() {
+            return others.isEmpty() && ramps.isEmpty();
+        }
+
+        int peek() {
+            return vertexAt[others.isEmpty() ? ramps.peek() : others.peek()];
+        }
+
+        double getKey(final int v) {
+            return (ramp[v] ? ramps : others).getKey(slot[v]);
+        }
+
+        void insert(final int v, final boolean isRamp, final double key) {
+            ramp[v] = isRamp;
+            (isRamp ? ramps : others).insert(slot[v], key);
+        }
+
+        void update(final int v, final boolean isRamp, final double key) {
+            if (ramp[v] != isRamp) {
+                (ramp[v] ? ramps : others).remove(slot[v]);
+                insert(v, isRamp, key);
+            } else {
+                (isRamp ? ramps : others).updateKey(slot[v], key);
+            }
+        }
+
+        void remove(final int v) {
+            (ramp[v] ? ramps : others).remove(slot[v]);
+        }
+    }
+
+    // Ties are broken by position in a scattered order of the vertices,
+    // contracting tied vertices by vertex id runs along chains and roads
+    private static int[] scatteredOrder(final int n) {
+        final long[] order = new long[n];
+        final int[] slot = new int[n];
+
+        for (int v = 0; v < n; v++) {
+            order[v] = ((long) HashCommon.mix(v) << 32) | v;
+        }
+
+        Arrays.sort(order);
+
+        for (int k = 0; k < n; k++) {
+            slot[(int) order[k]] = k;
+        }
+
+        return slot;
+    }
+
+    // Returns the number of shortcuts, contracts independent sets in parallel rounds with HIGHWAYS_CH_PARALLEL
+    public static int run(final GraphWithWeights<Double> g, final OrderingStrategy strategy) {
+        final ContractionGraph cg = new ContractionGraph(g);
+
+        if (Settings.getBoolean("HIGHWAYS_CH_PARALLEL", false)) {
+            return runParallel(
+                    cg,
+                    strategy,
+                    Settings.getInt("HIGHWAYS_THREADS", Runtime.getRuntime().availableProcessors())
+            );
+        }
+
+        return runSequential(cg, strategy);
+    }
+
+    static int runSequential(final ContractionGraph cg, final OrderingStrategy strategy) {
+        int numShortcuts = 0;
+
+        final int n = cg.getNumberOfVertices();
+        final ContractionQueue queue = new ContractionQueue(n);
+
+        System.out.println("Compute initial priorities");
+
+        strategy.initialize(cg);
+
+        for (int v = 0; v < n; v++) {
+            queue.insert(v, strategy.isRamp(cg, v), strategy.priority(cg, v));
+        }
+
+        final boolean updatesNeighbors = strategy.updatesNeighbors();
+        final boolean byEdgeDifference = strategy.prioritizesByEdgeDifference();
+
+        final ProgressCounter pc = new ProgressCounter(n);
+        pc.start();
+
+        System.out.println("Start contracting");
+
+        while (!queue.isEmpty()) {
+            final int v = queue.peek();
+            Collection<Edge> shortcuts = null;
+
+            if (updatesNeighbors) {
+                // Lazy update: priorities may have changed beyond the neighbors of contracted vertices
+                final boolean isRamp = strategy.isRamp(cg, v);
+                final double key;
+
+                if (byEdgeDifference) {
+                    // The graph does not change until v is contracted, so these are the shortcuts of v
+                    shortcuts = getShortcuts(cg, v);
+                    key = edgeDifference(cg, v, shortcuts);
+                } else {
+                    key = strategy.priority(cg, v);
+                }
+
+                if (isRamp != queue.ramp[v] || key != queue.getKey(v)) {
+                    queue.update(v, isRamp, key);
+                    continue;
+                }
+            }
+
+            queue.remove(v);
+            numShortcuts += contract(cg, v, shortcuts == null ? getShortcuts(cg, v) : shortcuts);
+
+            if (updatesNeighbors) {
+                for (final int w: cg.getNeighbors(v)) {
+                    queue.update(w, strategy.isRamp(cg, w), strategy.priority(cg, w));
+                }
+            }
+
+            pc.count();
+        }
+
+        return numShortcuts;
+    }
+
+    // Every round contracts the vertices whose key is the smallest within two hops among the vertices of the
+    // current class, ramps once no other vertices remain. Their shortcuts are computed concurrently on the
+    // unchanged graph and committed in vertex order, so the result does not depend on the number of threads.
+    static int runParallel(final ContractionGraph cg, final OrderingStrategy strategy, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+
+        int numShortcuts = 0;
+
+        final int n = cg.getNumberOfVertices();
+        final boolean[] ramp = new boolean[n];
+        final double[] priority = new double[n];
+        final int[] slot = scatteredOrder(n);
+        final boolean[] selected = new boolean[n];
+        final boolean[] updated = new boolean[n];
+
+        final int[] remaining = new int[n];
+        int numRemaining = n;
+
+        // Buffers of the current round, allocated once as late rounds only contract a few vertices
+        final int[] contracted = new int[n];
+        final int[] neighbors = new int[n];
+
+        for (int v = 0; v < n; v++) {
+            remaining[v] = v;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            System.out.println("Compute initial priorities");
+
+            strategy.initialize(cg);
+
+            parallelFor(executor, threads, n, v -> {
+                ramp[v] = strategy.isRamp(cg, v);
+                priority[v] = strategy.priority(cg, v);
+            });
+
+            final boolean updatesNeighbors = strategy.updatesNeighbors();
+
+            final ProgressCounter pc = new ProgressCounter(n);
+            pc.start();
+
+            System.out.println("Start contracting in parallel rounds");
+
+            while (numRemaining > 0) {
+                boolean rampRound = true;
+
+                for (int k = 0; k < numRemaining && rampRound; k++) {
+                    rampRound = ramp[remaining[k]];
+                }
+
+                final boolean round = rampRound;
+
+                parallelFor(executor, threads, numRemaining, k -> {
+                    final int v = remaining[k];
+                    selected[v] = ramp[v] == round && isLocalMinimum(cg, v, ramp, priority, slot);
+                });
+
+                int numSelected = 0;
+
+                for (int k = 0; k < numRemaining; k++) {
+                    if (selected[remaining[k]]) {
+                        contracted[numSelected++] = remaining[k];
+                    }
+                }
+
+                @SuppressWarnings("unchecked")
+                final Collection<Edge>[] shortcuts = new Collection[numSelected];
+
+                parallelFor(executor, threads, numSelected, k -> shortcuts[k] = getShortcuts(cg, contracted[k], selected));
+
+                // Commit
+                int numUpdated = 0;
+
+                for (int k = 0; k < numSelected; k++) {
+                    final int v = contracted[k];
+
+                    for (final Edge sc: shortcuts[k]) {
+                        cg.addShortcut(sc.u, sc.v, sc.weight);
+                    }
+
+                    numShortcuts += shortcuts[k].size();
+                    cg.contract(v);
+                    pc.count();
+                }
+
+                for (int k = 0; k < numSelected; k++) {
+                    final int v = contracted[k];
+
+                    selected[v] = false;
+
+                    for (final int w: cg.getNeighbors(v)) {
+                        if (!cg.isContracted(w) && !updated[w]) {
+                            updated[w] = true;
+                            neighbors[numUpdated++] = w;
+                        }
+                    }
+                }
+
+                if (updatesNeighbors) {
+                    parallelFor(executor, threads, numUpdated, k -> {
+                        final int w = neighbors[k];
+                        ramp[w] = strategy.isRamp(cg, w);
+                        priority[w] = strategy.priority(cg, w);
+                    });
+                }
+
+                for (int k = 0; k < numUpdated; k++) {
+                    updated[neighbors[k]] = false;
+                }
+
+                int next = 0;
+
+                for (int k = 0; k < numRemaining; k++) {
+                    if (!cg.isContracted(remaining[k])) {
+                        remaining[next++] = remaining[k];
+                    }
+                }
+
+                numRemaining = next;
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        return numShortcuts;
+    }
+
+    // No other vertex of the same class within two hops, in either direction, has a smaller key
+    private static boolean isLocalMinimum(
+            final ContractionGraph g,
+            final int v,
+            final boolean[] ramp,
+            final double[] priority,
+            final int[] slot
+    ) {
+        for (int d = 0; d < 2; d++) {
+            final boolean out = d == 0;
+            final int degree = out ? g.getOutDegree(v) : g.getInDegree(v);
+
+            for (int i = 0; i < degree; i++) {
+                final int w = out ? g.getOutHead(v, i) : g.getInTail(v, i);
+
+                if (precedes(w, v, ramp, priority, slot)) {
+                    return false;
+                }
+
+                for (int j = 0; j < g.getOutDegree(w); j++) {
+                    if (precedes(g.getOutHead(w, j), v, ramp, priority, slot)) {
+                        return false;
+                    }
+                }
+
+                for (int j = 0; j < g.getInDegree(w); j++) {
+                    if (precedes(g.getInTail(w, j), v, ramp, priority, slot)) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean precedes(
+            final int x,
+            final int v,
+            final boolean[] ramp,
+            final double[] priority,
+            final int[] slot
+    ) {
+        return x != v && ramp[x] == ramp[v]
+                && (priority[x] < priority[v] || (priority[x] == priority[v] && slot[x] < slot[v]));
+    }
+
+    // Runs body for 0 until (exclusive) count on all threads and waits for them
+    private static void parallelFor(
+            final ExecutorService executor,
+            final int threads,
+            final int count,
+            final IntConsumer body
+    ) {
+        final AtomicInteger next = new AtomicInteger(0);
+        final List<Future<?>> workers = new ArrayList<>(threads);
+
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                for (int begin; (begin = next.getAndAdd(PARALLEL_CHUNK)) < count; ) {
+                    final int end = Math.min(begin + PARALLEL_CHUNK, count);
+
+                    for (int k = begin; k < end; k++) {
+                        body.accept(k);
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (final Future<?> worker: workers) {
+                worker.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            executor.shutdownNow();
+            throw new IllegalStateException("Contraction round failed", e);
+        }
+    }
+
+    // Adds the shortcuts needed to contract v and removes v, returns the number of shortcuts
+    private static int contract(final ContractionGraph g, final int v, final Collection<Edge> shortcuts) {
+        for (final Edge sc: shortcuts) {
+            // Add shortcut (u,v,w) to graph
+            g.addShortcut(sc.u, sc.v, sc.weight);
+        }
+
+        g.contract(v);
+
+        return shortcuts.size();
+    }
+
+    static int edgeDifference(final ContractionGraph g, final int v) {
+        return edgeDifference(g, v, getShortcuts(g, v));
+    }
+
+    private static int edgeDifference(final ContractionGraph g, final int v, final Collection<Edge> shortcuts) {
+        return shortcuts.size() - g.getOutDegree(v) - g.getInDegree(v);
+    }
+
+    private static class Edge {
+        int u;
+        int v;
+        double weight;
+
+        Edge(final int u, final int v, final double weight) {
+            this.u = u; this.v = v; this.weight = weight;
+        }
+    }
+
+    private static Collection<Edge> getShortcuts(final ContractionGraph g, final int v) {
+        return getShortcuts(g, v, null);
+    }
+
+    // Paths through blocked vertices, contracted at the same time as v, are no witnesses of the same length
+    private static Collection<Edge> getShortcuts(final ContractionGraph g, final int v, final boolean[] blocked) {
+        final List<Edge> shortcuts = new ArrayList<>();
+        final WitnessSearch witness = WitnessSearch.get(g);
+
+        // Parallel arcs are merged in the graph, every neighbor appears once per direction
+        for (int i = 0; i < g.getInDegree(v); i++) {
+            final int u = g.getInTail(v, i);
+            final double inWeight = g.getInWeight(v, i);
+            final boolean[] needed = witness.search(g, u, inWeight, v, blocked);
+
+            for (int j = 0; j < g.getOutDegree(v); j++) {
+                if (needed[j]) {
+                    // How long is (u,v),(v,w)
+                    shortcuts.add(new Edge(u, g.getOutHead(v, j), inWeight + g.getOutWeight(v, j)));
+                }
+            }
+        }
+
+        return shortcuts;
+    }
+}
@@ -0,0 +1,282 @@
+package highways.algo.CH;
+
+import highways.GraphWithWeights;
+import highways.utils.DoubleSparseFunction;
+import highways.utils.Settings;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import java.util.Arrays;
+
+// Mutable graph for contraction hierarchies with in- and out-arcs stored per vertex.
+// Contracted vertices keep their own arcs but are removed from the arcs of their neighbors, so degrees and
+// searches only see the remaining graph. Shortcuts parallel to an existing arc are merged into it.
+public class ContractionGraph {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final int n;
+
+    private final int[] outDegree;
+    private final int[][] outHead;
+    private final double[][] outWeight;
+    // Out-arc is one direction of an undirected edge, which counts once in getEdgeDegree
+    private final boolean[][] outPaired;
+
+    private final int[] inDegree;
+    private final int[][] inTail;
+    private final double[][] inWeight;
+
+    private final boolean[] contracted;
+
+    // Limits of the witness searches, 0 for no limit
+    final int hopLimit;
+    final int settleLimit;
+
+    // Marks for collecting distinct neighbors
+    private final int[] mark;
+    private int stamp = 0;
+
+    // Minimum weight of parallel edges, no loops, as GraphWithWeights.simplify()
+    public ContractionGraph(final GraphWithWeights<Double> g) {
+        this(g, Settings.getInt("HIGHWAYS_CH_HOP_LIMIT", 0), Settings.getInt("HIGHWAYS_CH_SETTLE_LIMIT", 0));
+    }
+
+    ContractionGraph(final GraphWithWeights<Double> g, final int hopLimit, final int settleLimit) {
+        n = g.graph.getNumberOfVertices();
+        this.hopLimit = hopLimit;
+        this.settleLimit = settleLimit;
+
+        outDegree = new int[n];
+        outHead = new int[n][INITIAL_CAPACITY];
+        outWeight = new double[n][INITIAL_CAPACITY];
+        outPaired = new boolean[n][INITIAL_CAPACITY];
+        inDegree = new int[n];
+        inTail = new int[n][INITIAL_CAPACITY];
+        inWeight = new double[n][INITIAL_CAPACITY];
+        contracted = new boolean[n];
+        mark = new int[n];
+
+        final DoubleSparseFunction weights = g.doubleWeights();
+
+        for (final int e: g.graph.getEdges()) {
+            final double weight = weights.applyAsDouble(e);
+
+            if (g.graph.isDirectedSimpleEdge(e)) {
+                addArc(g.graph.getDirectedSimpleEdgeTail(e), g.graph.getDirectedSimpleEdgeHead(e), weight);
+            } else {
+                final IntSet endpoints = g.graph.getVerticesIncidentToEdge(e);
+
+                if (endpoints.size() != 2) {
+                    continue;
+                }
+
+                final IntIterator it = endpoints.iterator();
+                final int u = it.nextInt();
+                final int v = it.nextInt();
+
+                final boolean paired = findOutArc(u, v) == -1 && findOutArc(v, u) == -1;
+
+                addArc(u, v, weight);
+                addArc(v, u, weight);
+
+                if (paired) {
+                    outPaired[u][outDegree[u] - 1] = true;
+                    outPaired[v][outDegree[v] - 1] = true;
+                }
+            }
+        }
+    }
+
+    public int getNumberOfVertices() {
+        return n;
+    }
+
+    public boolean isContracted(final int v) {
+        return contracted[v];
+    }
+
+    public int getOutDegree(final int v) {
+        return outDegree[v];
+    }
+
+    public int getOutHead(final int v, final int i) {
+        return outHead[v][i];
+    }
+
+    public double getOutWeight(final int v, final int i) {
+        return outWeight[v][i];
+    }
+
+    public int getInDegree(final int v) {
+        return inDegree[v];
+    }
+
+    public int getInTail(final int v, final int i) {
+        return inTail[v][i];
+    }
+
+    public double getInWeight(final int v, final int i) {
+        return inWeight[v][i];
+    }
+
+    // Incident edges, both arcs of an undirected edge count once
+    public int getEdgeDegree(final int v) {
+        int degree = outDegree[v] + inDegree[v];
+
+        for (int i = 0; i < outDegree[v]; i++) {
+            if (outPaired[v][i]) {
+                degree--;
+            }
+        }
+
+        return degree;
+    }
+
+    // Distinct heads and tails of the arcs of v, not thread safe
+    public int[] getNeighbors(final int v) {
+        final int[] neighbors = new int[outDegree[v] + inDegree[v]];
+        int size = 0;
+
+        stamp++;
+
+        for (int i = 0; i < outDegree[v]; i++) {
+            final int w = outHead[v][i];
+
+            if (mark[w] != stamp) {
+                mark[w] = stamp;
+                neighbors[size++] = w;
+            }
+        }
+
+        for (int i = 0; i < inDegree[v]; i++) {
+            final int u = inTail[v][i];
+
+            if (mark[u] != stamp) {
+                mark[u] = stamp;
+                neighbors[size++] = u;
+            }
+        }
+
+        return Arrays.copyOf(neighbors, size);
+    }
+
+    // Adds the shortcut (u, w) or lowers the weight of an existing arc, returns false if the arc existed
+    public boolean addShortcut(final int u, final int w, final double weight) {
+        final int i = findOutArc(u, w);
+
+        if (i == -1) {
+            addArc(u, w, weight);
+            return true;
+        }
+
+        if (weight < outWeight[u][i]) {
+            outWeight[u][i] = weight;
+            inWeight[w][findInArc(w, u)] = weight;
+
+            // Both directions of the edge differ now
+            if (outPaired[u][i]) {
+                outPaired[u][i] = false;
+                outPaired[w][findOutArc(w, u)] = false;
+            }
+        }
+
+        return false;
+    }
+
+    // Removes v from the arcs of its neighbors, v keeps its own arcs
+    public void contract(final int v) {
+        if (contracted[v]) {
+            throw new IllegalStateException("Vertex is already contracted");
+        }
+
+        contracted[v] = true;
+
+        for (int i = 0; i < outDegree[v]; i++) {
+            removeInArc(outHead[v][i], v);
+        }
+
+        for (int i = 0; i < inDegree[v]; i++) {
+            removeOutArc(inTail[v][i], v);
+        }
+    }
+
+    private int findOutArc(final int u, final int w) {
+        for (int i = 0; i < outDegree[u]; i++) {
+            if (outHead[u][i] == w) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private int findInArc(final int w, final int u) {
+        for (int i = 0; i < inDegree[w]; i++) {
+            if (inTail[w][i] == u) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    // Arc (u, w), merged with an existing arc as the minimum
+    private void addArc(final int u, final int w, final double weight) {
+        if (u == w) {
+            return;
+        }
+
+        final int existing = findOutArc(u, w);
+
+        if (existing != -1) {
+            if (weight < outWeight[u][existing]) {
+                outWeight[u][existing] = weight;
+                inWeight[w][findInArc(w, u)] = weight;
+            }
+
+            return;
+        }
+
+        if (outDegree[u] == outHead[u].length) {
+            final int capacity = 2 * outHead[u].length;
+
+            outHead[u] = Arrays.copyOf(outHead[u], capacity);
+            outWeight[u] = Arrays.copyOf(outWeight[u], capacity);
+            outPaired[u] = Arrays.copyOf(outPaired[u], capacity);
+        }
+
+        if (inDegree[w] == inTail[w].length) {
+            final int capacity = 2 * inTail[w].length;
+
+            inTail[w] = Arrays.copyOf(inTail[w], capacity);
+            inWeight[w] = Arrays.copyOf(inWeight[w], capacity);
+        }
+
+        outHead[u][outDegree[u]] = w;
+        outWeight[u][outDegree[u]] = weight;
+        outPaired[u][outDegree[u]] = false;
+        outDegree[u]++;
+
+        inTail[w][inDegree[w]] = u;
+        inWeight[w][inDegree[w]] = weight;
+        inDegree[w]++;
+    }
+
+    // Swaps the last arc into the removed one, arcs are unordered
+    private void removeOutArc(final int u, final int w) {
+        final int i = findOutArc(u, w);
+        final int last = --outDegree[u];
+
+        outHead[u][i] = outHead[u][last];
+        outWeight[u][i] = outWeight[u][last];
+        outPaired[u][i] = outPaired[u][last];
+    }
+
+    private void removeInArc(final int w, final int u) {
+        final int i = findInArc(w, u);
+        final int last = --inDegree[w];
+
+        inTail[w][i] = inTail[w][last];
+        inWeight[w][i] = inWeight[w][last];
+    }
+}
@@ -0,0 +1,19 @@
+package highways.algo.CH;
+
+// Shortcuts added minus arcs removed by contracting a vertex
+public class EdgeDifferenceStrategy implements OrderingStrategy {
+    @Override
+    public double priority(final ContractionGraph g, final int v) {
+        return ContractionEngine.edgeDifference(g, v);
+    }
+
+    @Override
+    public boolean prioritizesByEdgeDifference() {
+        return true;
+    }
+
+    @Override
+    public boolean updatesNeighbors() {
+        return true;
+    }
+}
@@ -0,0 +1,22 @@
+package highways.algo.CH;
+
+import highways.GraphWithWeights;
+import highways.utils.SparseFunction;
+
+// Highest priority of the incident edges of the original graph
+public class EdgePriorityStrategy implements OrderingStrategy {
+    private final double[] vertexWeights;
+
+    public EdgePriorityStrategy(final GraphWithWeights<Double> g, final SparseFunction<Integer, Double> priority) {
+        vertexWeights = new double[g.graph.getNumberOfVertices()];
+
+        for (final int v: g.graph.getVertices()) {
+            vertexWeights[v] = g.graph.getEdgesIncidentTo(v).stream().mapToDouble(priority::apply).max().getAsDouble();
+        }
+    }
+
+    @Override
+    public double priority(final ContractionGraph g, final int v) {
+        return vertexWeights[v];
+    }
+}
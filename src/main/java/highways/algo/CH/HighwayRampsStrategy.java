@@ -0,0 +1,63 @@
+package highways.algo.CH;
+
+import highways.GraphWithWeights;
+import highways.utils.Pair;
+import highways.utils.SparseFunction;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import java.util.ArrayList;
+import java.util.stream.Collectors;
+
+// Ramps join roads to one of the k edges of highest highwayness, within a class by edge difference
+public class HighwayRampsStrategy implements OrderingStrategy {
+    private final boolean[] rampNode;
+
+    public HighwayRampsStrategy(
+            final GraphWithWeights<Double> g,
+            final SparseFunction<Integer, Double> highwayness,
+            final int k
+    ) {
+        final ArrayList<Pair<Integer, Double>> sortedHighwayness = new ArrayList<>();
+
+        for (final Pair<Integer, Double> p: highwayness.sparsePair()) {
+            sortedHighwayness.add(p);
+        }
+        sortedHighwayness.sort((p, q) -> -Double.compare(p.y, q.y));
+
+        final IntSet highwayEdges = sortedHighwayness.stream().limit(k).map(p -> p.x).collect(Collectors.toCollection(IntOpenHashSet::new));
+
+        rampNode = new boolean[g.graph.getNumberOfVertices()];
+
+        // Determine if vertex is a highway ramp
+        for (final int v: g.graph.getVertices()) {
+            final IntSet edges = g.graph.getEdgesIncidentTo(v);
+            final int[] he = edges.stream().mapToInt(Integer::intValue).filter(highwayEdges::contains).toArray();
+
+            if (he.length > 0 && (edges.size() > 2 || edges.size() != he.length)) {
+                // Vertex has incident highway edge and is not just connecting two, but join roads
+                rampNode[v] = true;
+            }
+        }
+    }
+
+    @Override
+    public boolean isRamp(final ContractionGraph g, final int v) {
+        return rampNode[v];
+    }
+
+    @Override
+    public double priority(final ContractionGraph g, final int v) {
+        return ContractionEngine.edgeDifference(g, v);
+    }
+
+    @Override
+    public boolean prioritizesByEdgeDifference() {
+        return true;
+    }
+
+    @Override
+    public boolean updatesNeighbors() {
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+package highways.algo.CH;
+
+// Order in which ContractionEngine contracts vertices.
+// Vertices classified as ramps are contracted after all others, within a class the lowest priority goes first
+// and ties are broken in a fixed order of the vertices.
+// In parallel contraction isRamp and priority are called from several threads at once.
+public interface OrderingStrategy {
+    // Called once before the initial priorities are computed
+    default void initialize(final ContractionGraph g) {
+    }
+
+    default boolean isRamp(final ContractionGraph g, final int v) {
+        return false;
+    }
+
+    double priority(final ContractionGraph g, final int v);
+
+    // priority is ContractionEngine.edgeDifference, then the re-check of the next vertex keeps the shortcuts it
+    // computed and contracts the vertex with them
+    default boolean prioritizesByEdgeDifference() {
+        return false;
+    }
+
+    // Re-evaluate class and priority of the neighbors of every contracted vertex, and of the next vertex before it
+    // is contracted, which is put back if either changed
+    default boolean updatesNeighbors() {
+        return false;
+    }
+}
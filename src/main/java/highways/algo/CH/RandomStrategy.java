@@ -0,0 +1,32 @@
+package highways.algo.CH;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.Collections;
+
+public class RandomStrategy implements OrderingStrategy {
+    private double[] position;
+
+    @Override
+    public void initialize(final ContractionGraph g) {
+        final int n = g.getNumberOfVertices();
+        final IntArrayList order = new IntArrayList(n);
+
+        for (int v = 0; v < n; v++) {
+            order.add(v);
+        }
+
+        Collections.shuffle(order);
+
+        position = new double[n];
+
+        for (int k = 0; k < n; k++) {
+            position[order.getInt(k)] = k;
+        }
+    }
+
+    @Override
+    public double priority(final ContractionGraph g, final int v) {
+        return position[v];
+    }
+}
@@ -0,0 +1,19 @@
+package highways.algo.CH;
+
+// Vertices joining more than two edges in the remaining graph are ramps, path vertices go first
+public class SimpleRampsStrategy implements OrderingStrategy {
+    @Override
+    public boolean isRamp(final ContractionGraph g, final int v) {
+        return g.getEdgeDegree(v) > 2;
+    }
+
+    @Override
+    public double priority(final ContractionGraph g, final int v) {
+        return 0.0;
+    }
+
+    @Override
+    public boolean updatesNeighbors() {
+        return true;
+    }
+}
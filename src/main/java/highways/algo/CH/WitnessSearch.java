@@ -0,0 +1,167 @@
+package highways.algo.CH;
+
+import highways.utils.IndexedPriorityQueue;
+
+import java.util.Arrays;
+
+// Witness search for contracting v: one Dijkstra from an in-neighbor u of v to all out-neighbors w at once.
+// The search runs through v as well. The shortcut (u, w) is not needed if a path shorter than (u, v, w) exists,
+// then (u, v, w) is no shortest path, or a path of the same length that avoids v.
+//
+// Hop and settle limits cut the search short, targets that are not decided then get a shortcut, which is never
+// wrong but may be unnecessary.
+class WitnessSearch {
+    // Limits of the current graph, 0 for no limit
+    private int hopLimit;
+    private int settleLimit;
+
+    private final IndexedPriorityQueue queue;
+
+    // Labels are valid for the current epoch only, so nothing is reset between searches
+    private int[] stamp;
+    private int epoch = 0;
+    private double[] distance;
+    private int[] hops;
+    // Label has a path of its distance that avoids v
+    private boolean[] avoiding;
+    // Out-neighbor of v in the current search
+    private int[] targetStamp;
+
+    // Shortcut for out-arc j of v is needed, valid until the next search
+    private boolean[] needed = new boolean[0];
+
+    private static final ThreadLocal<WitnessSearch> WORKSPACE = ThreadLocal.withInitial(WitnessSearch::new);
+
+    private WitnessSearch() {
+        this.queue = IndexedPriorityQueue.create(0);
+
+        stamp = new int[0];
+        distance = new double[0];
+        hops = new int[0];
+        avoiding = new boolean[0];
+        targetStamp = new int[0];
+    }
+
+    // Workspace of the current thread for g
+    static WitnessSearch get(final ContractionGraph g) {
+        final WitnessSearch search = WORKSPACE.get();
+        final int n = g.getNumberOfVertices();
+
+        search.hopLimit = g.hopLimit;
+        search.settleLimit = g.settleLimit;
+
+        if (search.stamp.length < n) {
+            search.stamp = new int[n];
+            search.distance = new double[n];
+            search.hops = new int[n];
+            search.avoiding = new boolean[n];
+            search.targetStamp = new int[n];
+            search.epoch = 0;
+        }
+
+        return search;
+    }
+
+    // Which shortcuts (u, w) over the in-arc (u, v) of weight inWeight are needed, indexed by the out-arcs of v.
+    // Paths through blocked vertices do not avoid v, they are contracted together with v. blocked may be null.
+    boolean[] search(
+            final ContractionGraph g,
+            final int u,
+            final double inWeight,
+            final int v,
+            final boolean[] blocked
+    ) {
+        final int outDegree = g.getOutDegree(v);
+
+        if (needed.length < outDegree) {
+            needed = new boolean[Math.max(outDegree, 2 * needed.length)];
+        }
+
+        // Stamps of an earlier search would compare equal again after a wrap, and 0 marks untouched vertices
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(targetStamp, 0);
+            epoch = 1;
+        }
+
+        double maxDistance = Double.NEGATIVE_INFINITY;
+        int remaining = 0;
+
+        for (int j = 0; j < outDegree; j++) {
+            final int w = g.getOutHead(v, j);
+
+            if (w != u && targetStamp[w] != epoch) {
+                targetStamp[w] = epoch;
+                remaining++;
+                maxDistance = Math.max(maxDistance, inWeight + g.getOutWeight(v, j));
+            }
+        }
+
+        if (remaining == 0) {
+            Arrays.fill(needed, 0, outDegree, false);
+            return needed;
+        }
+
+        queue.clear();
+
+        stamp[u] = epoch;
+        distance[u] = 0.0;
+        hops[u] = 0;
+        avoiding[u] = true;
+        queue.insert(u, 0.0);
+
+        int settled = 0;
+
+        while (!queue.isEmpty() && remaining > 0) {
+            final int x = queue.poll();
+            final double dX = distance[x];
+
+            if (dX > maxDistance || (settleLimit > 0 && settled >= settleLimit)) {
+                break;
+            }
+
+            settled++;
+
+            if (targetStamp[x] == epoch) {
+                remaining--;
+            }
+
+            if (hopLimit > 0 && hops[x] >= hopLimit) {
+                continue;
+            }
+
+            final boolean avoidingX = avoiding[x] && x != v && (blocked == null || !blocked[x]);
+
+            for (int i = 0; i < g.getOutDegree(x); i++) {
+                final int y = g.getOutHead(x, i);
+                final double dist = dX + g.getOutWeight(x, i);
+
+                if (stamp[y] != epoch) {
+                    stamp[y] = epoch;
+                    distance[y] = dist;
+                    hops[y] = hops[x] + 1;
+                    avoiding[y] = avoidingX;
+                    queue.insert(y, dist);
+                } else if (dist < distance[y]) {
+                    distance[y] = dist;
+                    hops[y] = hops[x] + 1;
+                    avoiding[y] = avoidingX;
+                    queue.decreaseKey(y, dist);
+                } else if (dist == distance[y] && avoidingX) {
+                    avoiding[y] = true;
+                }
+            }
+        }
+
+        // Labels are lengths of actual paths, so they decide targets that were not settled as well
+        for (int j = 0; j < outDegree; j++) {
+            final int w = g.getOutHead(v, j);
+            final double viaV = inWeight + g.getOutWeight(v, j);
+
+            needed[j] = w != u && (stamp[w] != epoch
+                    || !(distance[w] < viaV || (distance[w] == viaV && avoiding[w])));
+        }
+
+        return needed;
+    }
+}
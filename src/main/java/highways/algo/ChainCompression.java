@@ -0,0 +1,263 @@
+package highways.algo;
+
+import highways.ReadOnlyGraph;
+
+// Maximal chains of degree-2 vertices between junctions.
+// A chain vertex either has arcs to and from exactly two neighbors (a two-way chain) or exactly one arc in
+// and one arc out to two different neighbors (a one-way chain). Both kinds never mix within a chain.
+// Arcs with a non-positive weight end a chain, so a vertex inside a chain is never tied with a path through it.
+//
+// ChainSearch uses the chains to run the priority queue on junctions only, the chain vertices are settled by
+// walking the chain, and still produces the shortest path DAG of the original graph. Unlike the skeleton of
+// HwdPartitions nothing is approximated, every vertex stays a source and a target.
+public class ChainCompression {
+    public final ReadOnlyGraph graph;
+
+    // Chain of a vertex, -1 for junctions, and its position 1..k within the chain
+    public final int[] chainOf;
+    public final int[] position;
+
+    // Chain c runs from junction first[c] over chainVertices[chainBegin[c] + 1 .. chainBegin[c] + k]
+    // to junction last[c], with k = chainLength(c). Both ends can be the same junction.
+    public final int[] first;
+    public final int[] last;
+    public final int[] chainBegin;
+    public final int[] chainVertices;
+    // Arc from the vertex at position j to the one at j + 1 is forwardArc[chainBegin[c] + j] for j = 0..k,
+    // backwardArc the opposite arc or -1 for one-way chains
+    public final int[] forwardArc;
+    public final int[] backwardArc;
+    public final int numChains;
+
+    public ChainCompression(final ReadOnlyGraph g) {
+        final int n = g.getNumberOfVertices();
+
+        this.graph = g;
+
+        chainOf = new int[n];
+        position = new int[n];
+
+        final boolean[] candidate = new boolean[n];
+
+        for (int v = 0; v < n; v++) {
+            candidate[v] = isTwoWay(g, v) || isOneWay(g, v);
+            chainOf[v] = -1;
+        }
+
+        // Chains are first collected into growing arrays, every chain takes k + 1 slots
+        int[] begin = new int[16];
+        int[] firstOf = new int[16];
+        int[] lastOf = new int[16];
+        int[] vertices = new int[16];
+        int[] forward = new int[16];
+        int[] backward = new int[16];
+        int chains = 0;
+        int slots = 0;
+
+        final boolean[] junction = new boolean[n];
+
+        for (int v = 0; v < n; v++) {
+            junction[v] = !candidate[v];
+        }
+
+        // Rings without any junction get their lowest vertex as junction after all other chains are known
+        for (int pass = 0; pass < 2; pass++) {
+            for (int u = 0; u < n; u++) {
+                if (!junction[u]) {
+                    continue;
+                }
+
+                for (int i = g.getOutBegin(u); i < g.getOutEnd(u); i++) {
+                    final int x = g.getOutHead(i);
+
+                    if (junction[x] || chainOf[x] >= 0) {
+                        continue;
+                    }
+
+                    // A two-way chain is found from both ends, the first one walks it
+                    int prev = u;
+                    int cur = x;
+                    int arc = i;
+                    int k = 0;
+                    final int chainBeginSlot = slots;
+
+                    while (true) {
+                        if (slots + 1 >= vertices.length) {
+                            vertices = grow(vertices);
+                            forward = grow(forward);
+                            backward = grow(backward);
+                        }
+
+                        vertices[slots] = prev;
+                        forward[slots] = arc;
+                        backward[slots] = reverseArc(g, cur, prev);
+                        slots++;
+
+                        if (junction[cur]) {
+                            break;
+                        }
+
+                        k++;
+                        chainOf[cur] = chains;
+                        position[cur] = k;
+
+                        arc = nextArc(g, cur, prev);
+                        prev = cur;
+                        cur = g.getOutHead(arc);
+                    }
+
+                    // Arcs that are not usable in both directions make the chain one-way
+                    boolean twoWay = true;
+
+                    for (int j = chainBeginSlot; j < slots; j++) {
+                        twoWay &= backward[j] != -1;
+                    }
+
+                    if (!twoWay) {
+                        for (int j = chainBeginSlot; j < slots; j++) {
+                            backward[j] = -1;
+                        }
+                    }
+
+                    if (chains + 1 >= begin.length) {
+                        begin = grow(begin);
+                        firstOf = grow(firstOf);
+                        lastOf = grow(lastOf);
+                    }
+
+                    begin[chains] = chainBeginSlot;
+                    firstOf[chains] = u;
+                    lastOf[chains] = cur;
+                    chains++;
+                }
+            }
+
+            for (int v = 0; v < n && pass == 0; v++) {
+                if (candidate[v] && chainOf[v] == -1) {
+                    // Lowest vertex of a ring, the rest of the ring is walked from it in the second pass
+                    junction[v] = true;
+                    markRing(g, v, junction, chainOf);
+                }
+            }
+        }
+
+        begin[chains] = slots;
+
+        this.numChains = chains;
+        this.first = copy(firstOf, chains);
+        this.last = copy(lastOf, chains);
+        this.chainBegin = copy(begin, chains + 1);
+        this.chainVertices = copy(vertices, slots);
+        this.forwardArc = copy(forward, slots);
+        this.backwardArc = copy(backward, slots);
+    }
+
+    public int chainLength(final int c) {
+        return chainBegin[c + 1] - chainBegin[c] - 1;
+    }
+
+    public int getNumberOfJunctions() {
+        int junctions = 0;
+
+        for (final int c: chainOf) {
+            if (c == -1) {
+                junctions++;
+            }
+        }
+
+        return junctions;
+    }
+
+    // Vertex at position j of chain c, the ends at 0 and k + 1
+    public int vertexAt(final int c, final int j) {
+        return j == chainLength(c) + 1 ? last[c] : chainVertices[chainBegin[c] + j];
+    }
+
+    private static boolean isTwoWay(final ReadOnlyGraph g, final int v) {
+        if (g.getOutDegree(v) != 2 || g.getInDegree(v) != 2) {
+            return false;
+        }
+
+        final int a = g.getOutHead(g.getOutBegin(v));
+        final int b = g.getOutHead(g.getOutBegin(v) + 1);
+        final int c = g.getInTail(g.getInBegin(v));
+        final int d = g.getInTail(g.getInBegin(v) + 1);
+
+        return a != b && a != v && b != v
+                && ((a == c && b == d) || (a == d && b == c))
+                && positiveArcs(g, v);
+    }
+
+    private static boolean isOneWay(final ReadOnlyGraph g, final int v) {
+        if (g.getOutDegree(v) != 1 || g.getInDegree(v) != 1) {
+            return false;
+        }
+
+        final int head = g.getOutHead(g.getOutBegin(v));
+        final int tail = g.getInTail(g.getInBegin(v));
+
+        return head != tail && head != v && tail != v && positiveArcs(g, v);
+    }
+
+    private static boolean positiveArcs(final ReadOnlyGraph g, final int v) {
+        for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+            if (!(g.getOutWeight(i) > 0.0)) {
+                return false;
+            }
+        }
+
+        for (int i = g.getInBegin(v); i < g.getInEnd(v); i++) {
+            if (!(g.getInWeight(i) > 0.0)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Out-arc of a chain vertex that does not lead back to prev
+    private static int nextArc(final ReadOnlyGraph g, final int v, final int prev) {
+        for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+            if (g.getOutHead(i) != prev) {
+                return i;
+            }
+        }
+
+        throw new IllegalStateException("Chain vertex without a way forward");
+    }
+
+    private static int reverseArc(final ReadOnlyGraph g, final int v, final int w) {
+        for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+            if (g.getOutHead(i) == w) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    // The other vertices of a ring are marked with -2 until the second pass, so every ring gets exactly one junction
+    private static void markRing(final ReadOnlyGraph g, final int v, final boolean[] junction, final int[] chainOf) {
+        int prev = v;
+        int cur = g.getOutHead(g.getOutBegin(v));
+
+        while (cur != v) {
+            chainOf[cur] = -2;
+            final int next = g.getOutHead(nextArc(g, cur, prev));
+            prev = cur;
+            cur = next;
+        }
+    }
+
+    private static int[] grow(final int[] a) {
+        final int[] b = new int[a.length * 2];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    private static int[] copy(final int[] a, final int length) {
+        final int[] b = new int[length];
+        System.arraycopy(a, 0, b, 0, length);
+        return b;
+    }
+}
@@ -0,0 +1,334 @@
+package highways.algo;
+
+import highways.ReadOnlyGraph;
+import highways.utils.DoubleSparseFunction;
+import highways.utils.IndexedPriorityQueue;
+
+// Single source search over a ChainCompression that fills a ShortestPathDag of the original graph.
+// Only junctions go through the priority queue. When a junction is settled, every chain leaving it is walked
+// to its other end, which is relaxed like the head of a single arc. A chain vertex keeps one candidate per
+// direction it was walked in; after the search it is settled by the smaller one, or by both if they are tied.
+// Path weights are summed arc by arc as in ShortestPathDag, so ties and path counts are the same.
+//
+// Like ShortestPathDag, an instance is reused for many sources by one thread.
+public class ChainSearch {
+    private final ChainCompression chains;
+    private final ReadOnlyGraph g;
+    private final ShortestPathDag dag;
+    private final IndexedPriorityQueue queue;
+    private final boolean units;
+    private final boolean uniformWeights;
+
+    // Junction weights, infinite if not reached
+    private final double[] weight;
+    private final int[] reached;
+    private int numReached;
+
+    // Candidates of chain vertices, reached walking towards higher (forward) or lower positions (backward)
+    private final double[] forwardWeight;
+    private final double[] forwardLength;
+    private final double[] forwardSigma;
+    private final double[] backwardWeight;
+    private final double[] backwardLength;
+    private final double[] backwardSigma;
+    private final int[] walked;
+    private int numWalked;
+
+    // Settled junctions (>= 0) and walks (~walk) in the order they happened
+    private int[] events;
+    private int numEvents;
+    private int[] walkChain;
+    private int[] walkOrigin;
+    private int[] walkDirection;
+    private int numWalks;
+
+    private int source;
+
+    public ChainSearch(final ChainCompression chains) {
+        final int n = chains.graph.getNumberOfVertices();
+
+        this.chains = chains;
+        this.g = chains.graph;
+        this.dag = new ShortestPathDag(g);
+        this.queue = IndexedPriorityQueue.create(n);
+        this.units = g.getFixedPoint() != null;
+        this.uniformWeights = g.hasUniformWeights();
+
+        weight = new double[n];
+        reached = new int[n];
+        forwardWeight = new double[n];
+        forwardLength = new double[n];
+        forwardSigma = new double[n];
+        backwardWeight = new double[n];
+        backwardLength = new double[n];
+        backwardSigma = new double[n];
+        walked = new int[n];
+
+        events = new int[64];
+        walkChain = new int[64];
+        walkOrigin = new int[64];
+        walkDirection = new int[64];
+
+        for (int v = 0; v < n; v++) {
+            weight[v] = Double.POSITIVE_INFINITY;
+            forwardWeight[v] = Double.POSITIVE_INFINITY;
+            backwardWeight[v] = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    // Integer units and arc counts are exact as doubles
+    private double arcWeight(final int arc) {
+        if (uniformWeights) {
+            return 1.0;
+        }
+
+        return units ? g.getOutUnits(arc) : g.getOutWeight(arc);
+    }
+
+    private void reset() {
+        for (int k = 0; k < numReached; k++) {
+            weight[reached[k]] = Double.POSITIVE_INFINITY;
+        }
+
+        for (int k = 0; k < numWalked; k++) {
+            forwardWeight[walked[k]] = Double.POSITIVE_INFINITY;
+            backwardWeight[walked[k]] = Double.POSITIVE_INFINITY;
+        }
+
+        numReached = 0;
+        numWalked = 0;
+        numEvents = 0;
+        numWalks = 0;
+        queue.clear();
+    }
+
+    public ShortestPathDag compute(final int s, final DoubleSparseFunction distance) {
+        reset();
+
+        source = s;
+        dag.begin(s);
+
+        final int c = chains.chainOf[s];
+
+        if (c == -1) {
+            weight[s] = 0.0;
+            reached[numReached++] = s;
+            queue.insert(s, 0.0);
+        } else {
+            walk(c, chains.position[s], 1, 0.0, 0.0, 1.0, distance);
+
+            if (chains.backwardArc[chains.chainBegin[c]] != -1) {
+                walk(c, chains.position[s], -1, 0.0, 0.0, 1.0, distance);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            final int v = queue.poll();
+
+            addEvent(v);
+
+            if (v != s) {
+                dag.reach(v, weight[v]);
+            }
+
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                final int w = g.getOutHead(i);
+                final int cw = chains.chainOf[w];
+
+                if (cw == -1) {
+                    final double length = distance == null ? 0.0 : dag.totalDistance[v] + distance.applyAsDouble(g.getOutEdge(i));
+                    relax(v, w, g.getOutEdge(i), weight[v] + arcWeight(i), length, dag.sigma[v]);
+                } else if (w != s) {
+                    final int begin = chains.chainBegin[cw];
+
+                    if (chains.forwardArc[begin] == i) {
+                        walk(cw, 0, 1, weight[v], dag.totalDistance[v], dag.sigma[v], distance);
+                    } else {
+                        walk(cw, chains.chainLength(cw) + 1, -1, weight[v], dag.totalDistance[v], dag.sigma[v], distance);
+                    }
+                }
+            }
+        }
+
+        expand();
+
+        return dag;
+    }
+
+    private void relax(final int v, final int w, final int e, final double potential, final double length, final double sigma) {
+        // Path discovery
+        if (weight[w] > potential) {
+            if (weight[w] == Double.POSITIVE_INFINITY) {
+                reached[numReached++] = w;
+            }
+
+            weight[w] = potential;
+            queue.insertOrDecrease(w, potential);
+            dag.sigma[w] = 0.0;
+            dag.predFirst[w] = -1;
+            dag.totalDistance[w] = Double.POSITIVE_INFINITY;
+        }
+
+        // Path counting
+        if (weight[w] == potential && w != source) {
+            dag.sigma[w] += sigma;
+            dag.totalDistance[w] = Math.min(dag.totalDistance[w], length);
+            dag.link(v, w, e);
+        }
+    }
+
+    // Walks chain c from position origin until its end or the source, the end junction is relaxed
+    private void walk(
+            final int c,
+            final int origin,
+            final int direction,
+            final double originWeight,
+            final double originLength,
+            final double sigma,
+            final DoubleSparseFunction distance
+    ) {
+        final int begin = chains.chainBegin[c];
+        final int k = chains.chainLength(c);
+
+        double w = originWeight;
+        double length = originLength;
+
+        for (int pos = origin; ; pos += direction) {
+            final int arc = direction > 0 ? chains.forwardArc[begin + pos] : chains.backwardArc[begin + pos - 1];
+            final int next = pos + direction;
+
+            w += arcWeight(arc);
+
+            if (distance != null) {
+                length += distance.applyAsDouble(g.getOutEdge(arc));
+            }
+
+            if (next == 0 || next == k + 1) {
+                relax(chains.vertexAt(c, pos), chains.vertexAt(c, next), g.getOutEdge(arc), w, length, sigma);
+                break;
+            }
+
+            final int x = chains.chainVertices[begin + next];
+
+            if (x == source) {
+                break;
+            }
+
+            if (forwardWeight[x] == Double.POSITIVE_INFINITY && backwardWeight[x] == Double.POSITIVE_INFINITY) {
+                walked[numWalked++] = x;
+            }
+
+            if (direction > 0) {
+                forwardWeight[x] = w;
+                forwardLength[x] = length;
+                forwardSigma[x] = sigma;
+            } else {
+                backwardWeight[x] = w;
+                backwardLength[x] = length;
+                backwardSigma[x] = sigma;
+            }
+        }
+
+        if (numWalks == walkChain.length) {
+            walkChain = grow(walkChain);
+            walkOrigin = grow(walkOrigin);
+            walkDirection = grow(walkDirection);
+        }
+
+        walkChain[numWalks] = c;
+        walkOrigin[numWalks] = origin;
+        walkDirection[numWalks] = direction;
+        addEvent(~numWalks);
+        numWalks++;
+    }
+
+    private void addEvent(final int event) {
+        if (numEvents == events.length) {
+            events = grow(events);
+        }
+
+        events[numEvents++] = event;
+    }
+
+    // Settles the chain vertices and writes the settled order: every walk continues the order after its
+    // junction for as long as it is strictly shorter, tied vertices have no successors and go last
+    private void expand() {
+        final int[] order = dag.order;
+        int size = 0;
+
+        order[size++] = source;
+
+        for (int k = 0; k < numEvents; k++) {
+            final int event = events[k];
+
+            if (event >= 0) {
+                if (event != source) {
+                    order[size++] = event;
+                }
+                continue;
+            }
+
+            final int c = walkChain[~event];
+            final int direction = walkDirection[~event];
+            final int begin = chains.chainBegin[c];
+            final int end = chains.chainLength(c) + 1;
+
+            for (int pos = walkOrigin[~event] + direction; pos != 0 && pos != end; pos += direction) {
+                final int x = chains.chainVertices[begin + pos];
+
+                if (x == source) {
+                    break;
+                }
+
+                final double own = direction > 0 ? forwardWeight[x] : backwardWeight[x];
+                final double other = direction > 0 ? backwardWeight[x] : forwardWeight[x];
+
+                // Tied vertices are settled with both candidates after all walks
+                if (own >= other) {
+                    break;
+                }
+
+                settle(x, c, pos, direction);
+                order[size++] = x;
+            }
+        }
+
+        for (int k = 0; k < numWalked; k++) {
+            final int x = walked[k];
+
+            if (forwardWeight[x] == backwardWeight[x]) {
+                final int c = chains.chainOf[x];
+                settle(x, c, chains.position[x], 1);
+                settle(x, c, chains.position[x], -1);
+                order[size++] = x;
+            }
+        }
+
+        dag.size = size;
+    }
+
+    // Adds the candidate of x from the given direction, the first call for x also reaches it
+    private void settle(final int x, final int c, final int pos, final int direction) {
+        final int begin = chains.chainBegin[c];
+
+        if (dag.sigma[x] == 0.0) {
+            dag.reach(x, Math.min(forwardWeight[x], backwardWeight[x]));
+        }
+
+        if (direction > 0) {
+            dag.sigma[x] += forwardSigma[x];
+            dag.totalDistance[x] = Math.min(dag.totalDistance[x], forwardLength[x]);
+            dag.link(chains.vertexAt(c, pos - 1), x, g.getOutEdge(chains.forwardArc[begin + pos - 1]));
+        } else {
+            dag.sigma[x] += backwardSigma[x];
+            dag.totalDistance[x] = Math.min(dag.totalDistance[x], backwardLength[x]);
+            dag.link(chains.vertexAt(c, pos + 1), x, g.getOutEdge(chains.backwardArc[begin + pos]));
+        }
+    }
+
+    private static int[] grow(final int[] a) {
+        final int[] b = new int[a.length * 2];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+}
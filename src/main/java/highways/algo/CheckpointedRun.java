@@ -0,0 +1,238 @@
+package highways.algo;
+
+import highways.ReadOnlyGraph;
+import highways.utils.DoubleSparseFunction;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// All-sources run that can be resumed after a crash.
+// Sources are processed in rounds of chunkSize consecutive ids. After a round the summed results and the
+// completed source ranges are written to the checkpoint file, at most once per interval. The file is written
+// next to the checkpoint and then moved over it, so a crash while writing keeps the previous checkpoint.
+//
+// The header identifies the run (algorithm, kernel configuration, hash of graph and distances, result size,
+// source range), a checkpoint of another run is rejected instead of being continued.
+public class CheckpointedRun {
+    private static final int MAGIC = 0x48574b50;
+    private static final int VERSION = 2;
+
+    private final SourceKernel kernel;
+    private final String algorithm;
+    private final long hash;
+    private final File file;
+    private final int chunkSize;
+    private final long intervalMillis;
+    private final SourceScheduler scheduler;
+
+    // Completed source ranges as [begin, end) pairs
+    private final List<int[]> completed = new ArrayList<>();
+    private double[] values;
+
+    public CheckpointedRun(
+            final SourceKernel kernel,
+            final String algorithm,
+            final long hash,
+            final File file,
+            final int chunkSize,
+            final long intervalMillis,
+            final SourceScheduler scheduler
+    ) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size has to be positive");
+        }
+
+        this.kernel = kernel;
+        this.algorithm = algorithm;
+        this.hash = hash;
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.intervalMillis = intervalMillis;
+        this.scheduler = scheduler;
+    }
+
+    // Identifies graph structure, weights and an optional distance function
+    public static long hash(final ReadOnlyGraph g, final DoubleSparseFunction distance) {
+        long h = 1125899906842597L;
+
+        h = 31 * h + g.getNumberOfVertices();
+        h = 31 * h + g.getNumberOfEdges();
+
+        for (int v = 0; v < g.getNumberOfVertices(); v++) {
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                h = 31 * h + g.getOutHead(i);
+                h = 31 * h + g.getOutEdge(i);
+                h = 31 * h + Double.doubleToLongBits(g.getOutWeight(i));
+            }
+        }
+
+        if (distance != null) {
+            for (int e = 0; e < g.getNumberOfEdges(); e++) {
+                h = 31 * h + Double.doubleToLongBits(distance.applyAsDouble(e));
+            }
+        }
+
+        return h;
+    }
+
+    public double[] run(final int begin, final int end) {
+        values = new double[kernel.getResultSize()];
+        completed.clear();
+
+        if (file.exists()) {
+            load(begin, end);
+
+            System.out.println(String.format(
+                    "Resume from checkpoint %s with %d of %d sources done",
+                    file,
+                    countCompleted(),
+                    end - begin
+            ));
+        }
+
+        long lastSave = System.currentTimeMillis();
+
+        for (int chunk = begin; chunk < end; chunk += chunkSize) {
+            final int chunkEnd = (int) Math.min((long) chunk + chunkSize, end);
+
+            if (isCompleted(chunk, chunkEnd)) {
+                continue;
+            }
+
+            final int[] sources = new int[chunkEnd - chunk];
+
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = chunk + i;
+            }
+
+            System.out.println(String.format("Sources %d until %d", chunk, chunkEnd));
+
+            final double[] round = scheduler.run(kernel, sources);
+
+            for (int i = 0; i < values.length; i++) {
+                values[i] += round[i];
+            }
+
+            completed.add(new int[] {chunk, chunkEnd});
+
+            if (chunkEnd == end || System.currentTimeMillis() - lastSave >= intervalMillis) {
+                save(begin, end);
+                lastSave = System.currentTimeMillis();
+            }
+        }
+
+        return values;
+    }
+
+    private boolean isCompleted(final int begin, final int end) {
+        for (final int[] range: completed) {
+            if (range[0] <= begin && end <= range[1]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private long countCompleted() {
+        long count = 0;
+
+        for (final int[] range: completed) {
+            count += range[1] - range[0];
+        }
+
+        return count;
+    }
+
+    private void load(final int begin, final int end) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalStateException("Not a checkpoint file: " + file);
+            }
+
+            if (in.readInt() != VERSION) {
+                throw new IllegalStateException("Checkpoint " + file + " was written by another version");
+            }
+
+            final String fileAlgorithm = in.readUTF();
+            final String fileConfiguration = in.readUTF();
+
+            // Twins and symmetric pairs change what each source counts, mixing them counts pairs twice or never
+            if (!fileConfiguration.equals(kernel.getConfiguration())) {
+                throw new IllegalStateException(String.format(
+                        "Checkpoint %s was written by %s, this run uses %s",
+                        file,
+                        fileConfiguration,
+                        kernel.getConfiguration()
+                ));
+            }
+
+            final long fileHash = in.readLong();
+            final int fileSize = in.readInt();
+            final int fileBegin = in.readInt();
+            final int fileEnd = in.readInt();
+            final int fileChunkSize = in.readInt();
+
+            if (!fileAlgorithm.equals(algorithm)
+                    || fileHash != hash
+                    || fileSize != values.length
+                    || fileBegin != begin
+                    || fileEnd != end
+                    || fileChunkSize != chunkSize) {
+                throw new IllegalStateException("Checkpoint " + file + " belongs to a different run");
+            }
+
+            final int ranges = in.readInt();
+
+            for (int r = 0; r < ranges; r++) {
+                completed.add(new int[] {in.readInt(), in.readInt()});
+            }
+
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readDouble();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read checkpoint " + file, e);
+        }
+    }
+
+    private void save(final int begin, final int end) {
+        final File tmp = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(algorithm);
+            out.writeUTF(kernel.getConfiguration());
+            out.writeLong(hash);
+            out.writeInt(values.length);
+            out.writeInt(begin);
+            out.writeInt(end);
+            out.writeInt(chunkSize);
+
+            out.writeInt(completed.size());
+
+            for (final int[] range: completed) {
+                out.writeInt(range[0]);
+                out.writeInt(range[1]);
+            }
+
+            for (final double value: values) {
+                out.writeDouble(value);
+            }
+        } catch (IOException e) {
+            // A failed checkpoint does not stop the run, the previous checkpoint is still intact
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,76 +1,103 @@
 package highways.algo;
 
 import grph.Grph;
-import highways.utils.MapSparseFunction;
-import highways.utils.Pair;
+import highways.ReadOnlyGraph;
+import highways.utils.Accumulator;
 import highways.utils.SparseFunction;
-import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import it.unimi.dsi.fastutil.ints.IntList;
-import it.unimi.dsi.fastutil.ints.IntSet;
-
-import java.util.Stack;
 
 public class EdgeBetweennessCentrality extends BetweennessCentrality {
     public EdgeBetweennessCentrality(final Grph g, final SparseFunction<Integer, Double> weights) {
         super(g, weights);
     }
 
-    @Override
-    public SparseFunction<Integer, Double> compute() {
-        final int m = g.getNumberOfEdges();
+    public EdgeBetweennessCentrality(final ReadOnlyGraph g) {
+        super(g);
+    }
 
-        final Int2DoubleMap betweenness = new Int2DoubleOpenHashMap(m);
-        betweenness.defaultReturnValue(0.0);
+    public EdgeBetweennessCentrality(final ReadOnlyGraph g, final ChainCompression chains) {
+        super(g, chains);
+    }
 
-        for (final int s: g.getVertices()) {
-            accumulate(betweenness, s);
-        }
+    public EdgeBetweennessCentrality(final ReadOnlyGraph g, final ChainCompression chains, final SymmetricPairs pairs) {
+        super(g, chains, pairs);
+    }
 
-        return new MapSparseFunction<>(betweenness);
+    EdgeBetweennessCentrality(final ReadOnlyGraph g, final boolean multiSource) {
+        super(g, null, null, multiSource);
     }
 
     @Override
-    Int2DoubleMap computePartial(final int s) {
-        final int m = g.getNumberOfEdges();
+    public int getResultSize() {
+        return g.getNumberOfEdges();
+    }
+
+    @Override
+    public void accumulate(
+            final Accumulator betweenness,
+            final int s
+    ) {
+        final ShortestPathDag dag = computeExploration(s);
+        final double[] sigma = dag.sigma;
+        final double[] d = dag.delta;
+
+        for (int k = dag.size - 1; k >= 0; k--) {
+            final int w = dag.order[k];
+            final double pairs = pairCount(s, w);
 
-        final Int2DoubleMap partialBetweenness = new Int2DoubleOpenHashMap(m);
-        partialBetweenness.defaultReturnValue(0.0);
-        accumulate(partialBetweenness, s);
+            for (int l = dag.predFirst[w]; l != -1; l = dag.predNext[l]) {
+                final int v = dag.predVertex[l];
+                final int e = dag.predEdge[l];
+                final double c = sigma[v] / sigma[w] * (pairs + d[w]);
 
-        return partialBetweenness;
+                d[v] += c;
+                betweenness.add(e, c);
+            }
+        }
     }
 
-    private void accumulate(
-            final Int2DoubleMap betweenness,
-            final int s
+    @Override
+    public void accumulateBatch(
+            final Accumulator betweenness,
+            final int[] sources,
+            final int begin,
+            final int end
     ) {
-        final int n = g.getNumberOfVertices();
-        final Pair<Pair<IntList[], Stack<Integer>>, int[]> result = computeExploration(s);
-        final IntList[] pred = result.x.x;
-        final Stack<Integer> S = result.x.y;
-        final int[] sigma = result.y;
+        if (!multiSource) {
+            super.accumulateBatch(betweenness, sources, begin, end);
+            return;
+        }
 
-        final Int2DoubleMap d = new Int2DoubleOpenHashMap(n);
-        d.defaultReturnValue(0.0);
+        final MultiSourceBfs bfs = computeExploration(sources, begin, end);
+        final int W = MultiSourceBfs.WIDTH;
+        final double[] sigma = bfs.sigma;
+        final double[] d = bfs.delta;
 
-        while (!S.isEmpty()) {
-            final int w = S.pop();
+        for (int level = bfs.levels - 1; level >= 1; level--) {
+            bfs.markLevel(level - 1);
 
-            for (final int v: pred[w]) {
-                final double c = (double)sigma[v] / (double)sigma[w] * (1.0 + d.get(w));
+            for (int k = bfs.levelBegin[level]; k < bfs.levelBegin[level + 1]; k++) {
+                final int w = bfs.entryVertex[k];
+                final long mw = bfs.entryMask[k];
 
-                final IntSet edges = g.getEdgesConnecting(v, w);
+                for (int i = g.getInBegin(w); i < g.getInEnd(w); i++) {
+                    final int v = g.getInTail(i);
+                    double sum = 0.0;
 
-                if (edges.size() != 1) {
-                    throw new IllegalStateException("Does not allow multi-edges");
-                }
+                    for (long mask = mw & bfs.levelMask[v]; mask != 0; mask &= mask - 1) {
+                        final int l = Long.numberOfTrailingZeros(mask);
+                        final double c = sigma[v * W + l] / sigma[w * W + l] * (1.0 + d[w * W + l]);
 
-                final int e = edges.iterator().nextInt();
+                        d[v * W + l] += c;
+                        sum += c;
+                    }
 
-                d.put(v, d.get(v) + c);
-                betweenness.put(e, betweenness.get(e) + c);
+                    if (sum != 0.0) {
+                        betweenness.add(g.getInEdge(i), sum);
+                    }
+                }
             }
+
+            bfs.unmarkLevel(level - 1);
         }
     }
 }
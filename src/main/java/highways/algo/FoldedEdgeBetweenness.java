@@ -0,0 +1,91 @@
+package highways.algo;
+
+import highways.utils.Accumulator;
+
+// Edge betweenness computed from the core vertices of a TreeFolding only.
+// Shortest paths between the trees of two core vertices a and b are the core paths from a to b extended by the
+// unique tree paths, so a core source stands for all vertices of its tree and every core target for all vertices
+// of its tree. Tree edges are on all paths between their subtree and the vertices that the root reaches or is
+// reached from, which are counted by a forward and a reverse search from the root.
+public class FoldedEdgeBetweenness implements SourceKernel {
+    private final TreeFolding folding;
+    private final ThreadLocal<ShortestPathDag> workspace;
+    private final ThreadLocal<ShortestPathDag> reverseWorkspace;
+    // Searches over compressed chains of the core, null to search the core directly
+    private final ThreadLocal<ChainSearch> chainWorkspace;
+
+    public FoldedEdgeBetweenness(final TreeFolding folding) {
+        this(folding, null);
+    }
+
+    public FoldedEdgeBetweenness(final TreeFolding folding, final ChainCompression chains) {
+        this.folding = folding;
+        this.workspace = ThreadLocal.withInitial(() -> new ShortestPathDag(folding.core));
+        this.chainWorkspace = chains == null ? null : ThreadLocal.withInitial(() -> new ChainSearch(chains));
+        this.reverseWorkspace = ThreadLocal.withInitial(() -> new ShortestPathDag(folding.reverseCore));
+    }
+
+    @Override
+    public int getResultSize() {
+        return folding.graph.getNumberOfEdges();
+    }
+
+    @Override
+    public void accumulate(final Accumulator betweenness, final int a) {
+        final ShortestPathDag dag;
+
+        if (chainWorkspace != null) {
+            dag = chainWorkspace.get().compute(a, null);
+        } else {
+            dag = workspace.get();
+            dag.compute(folding.core, a, null);
+        }
+
+        final double[] sigma = dag.sigma;
+        final double[] d = dag.delta;
+        final int[] treeSize = folding.treeSize;
+        final double sourceSize = treeSize[a];
+
+        for (int k = dag.size - 1; k >= 0; k--) {
+            final int w = dag.order[k];
+
+            for (int l = dag.predFirst[w]; l != -1; l = dag.predNext[l]) {
+                final int v = dag.predVertex[l];
+                final int e = dag.predEdge[l];
+                final double c = sigma[v] / sigma[w] * (treeSize[w] + d[w]);
+
+                d[v] += c;
+                betweenness.add(e, sourceSize * c);
+            }
+        }
+
+        if (folding.treeBegin[a] == folding.treeBegin[a + 1]) {
+            return;
+        }
+
+        // Every tree is handled by the source of its root
+        final long reached = reachedSize(dag);
+        final ShortestPathDag reverseDag = reverseWorkspace.get();
+        reverseDag.compute(folding.reverseCore, a, null);
+        final long reaching = reachedSize(reverseDag);
+
+        for (int k = folding.treeBegin[a]; k < folding.treeBegin[a + 1]; k++) {
+            final int v = folding.treeVertices[k];
+            final long size = folding.subtree[v];
+
+            betweenness.add(folding.upEdge[v], size * (reached - size));
+            betweenness.add(folding.downEdge[v], (reaching - size) * size);
+        }
+    }
+
+    // Vertices in the trees of all settled core vertices
+    private long reachedSize(final ShortestPathDag dag) {
+        long size = 0;
+
+        for (int k = 0; k < dag.size; k++) {
+            size += folding.treeSize[dag.order[k]];
+        }
+
+        return size;
+    }
+}
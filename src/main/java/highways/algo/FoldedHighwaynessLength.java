@@ -0,0 +1,211 @@
+package highways.algo;
+
+import highways.ReadOnlyGraph;
+import highways.utils.Accumulator;
+import highways.utils.DoubleSparseFunction;
+
+// Highwayness length computed from the core vertices of a TreeFolding only.
+// The length of a path between the trees of core vertices a and b is depth(s) + L(a, b) + depth(t), with L the
+// length in the core. So every core source a sweeps the core once with the target terms 1/length summed over the
+// depths of both trees. The tree of a is finished by its own source:
+// - arcs towards a, for targets outside the tree, from the path counts and lengths of the forward search,
+// - arcs away from a, for sources outside the tree, from the lengths of a search on the reversed core,
+// - all pairs inside the tree by a sweep over the tree from each of its vertices.
+public class FoldedHighwaynessLength implements SourceKernel {
+    private final TreeFolding folding;
+    private final DoubleSparseFunction distance;
+    private final ThreadLocal<Workspace> workspace;
+    // Searches over compressed chains of the core, null to search the core directly
+    private final ThreadLocal<ChainSearch> chainWorkspace;
+
+    private static class Workspace {
+        final ShortestPathDag dag;
+        final ShortestPathDag reverseDag;
+        // Per depth of the source tree
+        final double[] perDepth;
+        // Per original vertex, for the sweeps over trees
+        final double[] vertexSum;
+        final int[] order;
+        final int[] hops;
+        final int[] from;
+        final int[] fromEdge;
+
+        Workspace(final TreeFolding folding) {
+            final int n = folding.graph.getNumberOfVertices();
+
+            dag = new ShortestPathDag(folding.core);
+            reverseDag = new ShortestPathDag(folding.reverseCore);
+            perDepth = new double[folding.maxDepth + 1];
+            vertexSum = new double[n];
+            order = new int[n];
+            hops = new int[n];
+            from = new int[n];
+            fromEdge = new int[n];
+        }
+    }
+
+    public FoldedHighwaynessLength(final TreeFolding folding) {
+        this(folding, null);
+    }
+
+    public FoldedHighwaynessLength(final TreeFolding folding, final ChainCompression chains) {
+        this.folding = folding;
+        this.distance = HighwaynessLength.uniform(folding.graph.getNumberOfEdges());
+        this.workspace = ThreadLocal.withInitial(() -> new Workspace(folding));
+        this.chainWorkspace = chains == null ? null : ThreadLocal.withInitial(() -> new ChainSearch(chains));
+    }
+
+    @Override
+    public int getResultSize() {
+        return folding.graph.getNumberOfEdges();
+    }
+
+    // Sum of 1/(i + length + j) over the vertices at depth j of the tree of b
+    private double targetTerm(final int b, final int i, final double length) {
+        double sum = 0.0;
+
+        for (int j = 0; j <= folding.getHeight(b); j++) {
+            sum += folding.getDepthCount(b, j) / (i + length + j);
+        }
+
+        return sum;
+    }
+
+    @Override
+    public void accumulate(final Accumulator edgeHighwayness, final int a) {
+        final Workspace ws = workspace.get();
+        final double[] perDepth = ws.perDepth;
+        final int height = folding.getHeight(a);
+        final ShortestPathDag dag;
+
+        if (chainWorkspace != null) {
+            dag = chainWorkspace.get().compute(a, distance);
+        } else {
+            dag = ws.dag;
+            dag.compute(folding.core, a, distance);
+        }
+
+        final double[] totalLength = dag.totalDistance;
+        final double[] sigma = dag.delta;
+
+        // Core sweep, perDepth collects the path count weighted terms for the arcs towards a
+        for (int k = dag.size - 1; k >= 1; k--) {
+            final int w = dag.order[k];
+            double target = 0.0;
+
+            for (int i = 0; i <= height; i++) {
+                final double term = targetTerm(w, i, totalLength[w]);
+
+                target += folding.getDepthCount(a, i) * term;
+                perDepth[i] += dag.sigma[w] * term;
+            }
+
+            for (int l = dag.predFirst[w]; l != -1; l = dag.predNext[l]) {
+                final int v = dag.predVertex[l];
+                final double sig = sigma[w] + target;
+
+                sigma[v] += sig;
+                edgeHighwayness.add(dag.predEdge[l], sig);
+            }
+        }
+
+        if (height == 0) {
+            perDepth[0] = 0.0;
+            return;
+        }
+
+        addTreeSums(edgeHighwayness, a, perDepth, folding.upEdge);
+
+        // Sources outside the tree of a
+        final ShortestPathDag reverseDag = ws.reverseDag;
+        reverseDag.compute(folding.reverseCore, a, distance);
+
+        for (int k = 1; k < reverseDag.size; k++) {
+            final int b = reverseDag.order[k];
+
+            for (int i = 1; i <= height; i++) {
+                perDepth[i] += targetTerm(b, i, reverseDag.totalDistance[b]);
+            }
+        }
+
+        addTreeSums(edgeHighwayness, a, perDepth, folding.downEdge);
+
+        for (int k = folding.treeBegin[a]; k < folding.treeBegin[a + 1]; k++) {
+            sweepTree(edgeHighwayness, ws, a, folding.treeVertices[k]);
+        }
+
+        sweepTree(edgeHighwayness, ws, a, folding.coreVertex[a]);
+    }
+
+    // Adds the sum of perDepth[depth(v)] over the subtree of every tree vertex v of a to its edge, then clears perDepth
+    private void addTreeSums(final Accumulator edgeHighwayness, final int a, final double[] perDepth, final int[] edge) {
+        final double[] vertexSum = workspace.get().vertexSum;
+
+        for (int k = folding.treeBegin[a + 1] - 1; k >= folding.treeBegin[a]; k--) {
+            final int v = folding.treeVertices[k];
+            final double sum = vertexSum[v] + perDepth[folding.depth[v]];
+
+            edgeHighwayness.add(edge[v], sum);
+            vertexSum[folding.parent[v]] += sum;
+            vertexSum[v] = 0.0;
+        }
+
+        vertexSum[folding.coreVertex[a]] = 0.0;
+
+        for (int i = 0; i < perDepth.length; i++) {
+            perDepth[i] = 0.0;
+        }
+    }
+
+    // Highwayness length of the paths from s to the other vertices of the tree of a, which are unique
+    private void sweepTree(final Accumulator edgeHighwayness, final Workspace ws, final int a, final int s) {
+        final ReadOnlyGraph g = folding.graph;
+        final int root = folding.coreVertex[a];
+        final int[] order = ws.order;
+        final int[] hops = ws.hops;
+        final int[] from = ws.from;
+        final int[] fromEdge = ws.fromEdge;
+        final double[] sigma = ws.vertexSum;
+
+        int size = 0;
+
+        order[size++] = s;
+        hops[s] = 0;
+        from[s] = -1;
+
+        for (int head = 0; head < size; head++) {
+            final int v = order[head];
+
+            if (v != root && folding.parent[v] != from[v]) {
+                final int p = folding.parent[v];
+
+                order[size++] = p;
+                hops[p] = hops[v] + 1;
+                from[p] = v;
+                fromEdge[p] = folding.upEdge[v];
+            }
+
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                final int w = g.getOutHead(i);
+
+                if (folding.parent[w] == v && w != from[v]) {
+                    order[size++] = w;
+                    hops[w] = hops[v] + 1;
+                    from[w] = v;
+                    fromEdge[w] = folding.downEdge[w];
+                }
+            }
+        }
+
+        for (int k = size - 1; k >= 1; k--) {
+            final int w = order[k];
+            final double sig = sigma[w] + 1.0 / hops[w];
+
+            sigma[from[w]] += sig;
+            edgeHighwayness.add(fromEdge[w], sig);
+            sigma[w] = 0.0;
+        }
+
+        sigma[s] = 0.0;
+    }
+}
@@ -1,124 +1,95 @@
 package highways.algo;
 
 import grph.Grph;
-import highways.utils.MapSparseFunction;
-import highways.utils.Pair;
-import highways.utils.ProgressCounter;
+import highways.CsrGraph;
+import highways.ReadOnlyGraph;
+import highways.utils.DoubleArraySparseFunction;
+import highways.utils.DoubleSparseFunction;
+import highways.utils.Settings;
 import highways.utils.SparseFunction;
-import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntSet;
 
-import java.util.Comparator;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Stack;
-
-abstract public class Highwayness {
-    final Grph g;
-    final SparseFunction<Integer, Double> weights;
-    final SparseFunction<Integer, Double> distance;
+abstract public class Highwayness implements SourceKernel {
+    final ReadOnlyGraph g;
+    final DoubleSparseFunction distance;
+    // One exploration workspace per worker thread, reused for all of its sources
+    final ThreadLocal<ShortestPathDag> workspace;
+    // Multi-source search for uniform weights, used by kernels that override getBatchSize()
+    final boolean multiSource;
+    final ThreadLocal<MultiSourceBfs> batchWorkspace;
+    // Searches over compressed chains, null to search the graph directly
+    final ThreadLocal<ChainSearch> chainWorkspace;
 
     public Highwayness(
             final Grph g,
             final SparseFunction<Integer, Double> weights,
             final SparseFunction<Integer, Double> distance
     ) {
-        this.g = g;
-        this.weights = weights;
-        this.distance = distance;
+        this(CsrGraph.fromGraph(g, weights), distance);
     }
 
-    abstract Int2DoubleMap computePartial(final int s);
-
-    public SparseFunction<Integer, Double> computeParallel() {
-        final int n = g.getNumberOfVertices();
-
-        final ProgressCounter counter = new ProgressCounter(n);
-        counter.start();
-
-        Int2DoubleMap betweenness = g.getVertices().parallelStream()
-                .map(this::computePartial)
-                .map(counter.relayCount())
-                .reduce((a, b) -> {
-                    final Int2DoubleOpenHashMap sum = new Int2DoubleOpenHashMap(n);
-
-                    for (final int i: a.keySet()) {
-                        sum.addTo(i, a.get(i));
-                    }
-
-                    for (final int i: b.keySet()) {
-                        sum.addTo(i, b.get(i));
-                    }
-
-                    return sum;
-                }).get();
-
-        return new MapSparseFunction<>(betweenness);
+    public Highwayness(
+            final ReadOnlyGraph g,
+            final SparseFunction<Integer, Double> distance
+    ) {
+        this(g, distance, null);
     }
 
-    Pair<Pair<IntArrayList[], Stack<Integer>>, Pair<double[], double[]>> computeExploration(final int s) {
-        final int n = g.getNumberOfVertices();
-
-        // Initialization
-        final boolean[] settled = new boolean[n];
-        final double[] totalWeight = new double[n];
-        final double[] totalDistance = new double[n];
+    public Highwayness(
+            final ReadOnlyGraph g,
+            final SparseFunction<Integer, Double> distance,
+            final ChainCompression chains
+    ) {
+        this(g, distance, chains, Settings.getBoolean("HIGHWAYS_MULTI_SOURCE_BFS", false));
+    }
 
-        final IntArrayList[] pred = new IntArrayList[n];
+    // Multi-source search on uniform weights regardless of HIGHWAYS_MULTI_SOURCE_BFS
+    Highwayness(
+            final ReadOnlyGraph g,
+            final SparseFunction<Integer, Double> distance,
+            final ChainCompression chains,
+            final boolean multiSource
+    ) {
+        this.g = g;
+        this.distance = DoubleSparseFunction.of(distance, g.getNumberOfEdges());
+        this.workspace = ThreadLocal.withInitial(() -> new ShortestPathDag(g));
+        this.multiSource = multiSource && g.hasUniformWeights();
 
-        for (int i = 0; i < n; i++) {
-            totalWeight[i] = Double.POSITIVE_INFINITY;
-            totalDistance[i] = Double.POSITIVE_INFINITY;
-            pred[i] = null;
+        if (multiSource) {
+            MultiSourceBfs.checkSize(g.getNumberOfVertices());
         }
 
-        Stack<Integer> S = new Stack<>();
-
-        Queue<Pair<Integer, Double>> Q = new PriorityQueue<>(Comparator.comparingDouble(o -> o.y));
-
-        totalWeight[s] = 0.0;
-        totalDistance[s] = 0.0;
-
-        Q.add(new Pair<>(s, totalWeight[s]));
-
-        while (!Q.isEmpty()) {
-            final int v = Q.remove().x;
-
-            if (settled[v]) {
-                continue;
-            }
-
-            settled[v] = true;
-            S.add(v);
+        this.batchWorkspace = ThreadLocal.withInitial(() -> new MultiSourceBfs(g, true));
+        this.chainWorkspace = chains == null ? null : ThreadLocal.withInitial(() -> new ChainSearch(chains));
+    }
 
-            final double wv = totalWeight[v];
+    @Override
+    public int getResultSize() {
+        return g.getNumberOfEdges();
+    }
 
-            for (int e: g.getOutEdges(v)) {
-                final IntSet endpoints = g.getVerticesAccessibleThrough(v, e);
+    public SparseFunction<Integer, Double> computeParallel() {
+        return computeParallel(SourceScheduler.fromSettings(g));
+    }
 
-                if (endpoints.size() != 1) {
-                    throw new IllegalStateException("Only simple edges are allowed");
-                }
+    public SparseFunction<Integer, Double> computeParallel(final SourceScheduler scheduler) {
+        return new DoubleArraySparseFunction(scheduler.run(this, g.getNumberOfVertices()));
+    }
 
-                final int w = endpoints.iterator().nextInt();
-                final double potentialWeight = wv + weights.apply(e);
+    MultiSourceBfs computeExploration(final int[] sources, final int begin, final int end) {
+        final MultiSourceBfs bfs = batchWorkspace.get();
+        bfs.compute(g, sources, begin, end, distance);
 
-                // Path discovery
-                if (totalWeight[w] > potentialWeight) {
-                    totalWeight[w] = potentialWeight;
-                    Q.add(new Pair<>(w, potentialWeight));
-                    pred[w] = new IntArrayList();
-                    totalDistance[w] = totalDistance[v] + distance.apply(e);
-                }
+        return bfs;
+    }
 
-                if (totalWeight[w] == potentialWeight && w != s) {
-                    pred[w].add(v);
-                }
-            }
+    ShortestPathDag computeExploration(final int s) {
+        if (chainWorkspace != null) {
+            return chainWorkspace.get().compute(s, distance);
         }
 
-        return new Pair<>(new Pair<>(pred, S), new Pair<>(totalWeight, totalDistance));
+        final ShortestPathDag dag = workspace.get();
+        dag.compute(g, s, distance);
+
+        return dag;
     }
 }
@@ -1,19 +1,15 @@
 package highways.algo;
 
 import grph.Grph;
+import highways.ReadOnlyGraph;
+import highways.utils.Accumulator;
 import highways.utils.DoubleArraySparseFunction;
-import highways.utils.Pair;
+import highways.utils.DoubleSparseFunction;
 import highways.utils.SparseFunction;
-import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntSet;
-
-import java.util.Stack;
 
 public class HighwaynessLength extends Highwayness {
-    private static SparseFunction<Integer, Double> uniform(final Grph g) {
-        final double[] ones = new double[g.getNumberOfEdges()];
+    public static DoubleSparseFunction uniform(final int m) {
+        final double[] ones = new double[m];
         for (int i = 0; i < ones.length; i++) {
             ones[i] = 1.0;
         }
@@ -24,57 +20,108 @@ public class HighwaynessLength extends Highwayness {
             final Grph g,
             final SparseFunction<Integer, Double> weights
     ) {
-        super(g, weights, uniform(g));
+        super(g, weights, uniform(g.getNumberOfEdges()));
     }
 
-    Int2DoubleMap computePartial(final int s) {
-        final int n = g.getNumberOfVertices();
+    public HighwaynessLength(final ReadOnlyGraph g) {
+        super(g, uniform(g.getNumberOfEdges()));
+    }
 
-        final Int2DoubleOpenHashMap edgeHighwayness = new Int2DoubleOpenHashMap();
-        edgeHighwayness.defaultReturnValue(0.0);
+    public HighwaynessLength(final ReadOnlyGraph g, final ChainCompression chains) {
+        super(g, uniform(g.getNumberOfEdges()), chains);
+    }
 
+    HighwaynessLength(final ReadOnlyGraph g, final boolean multiSource) {
+        super(g, uniform(g.getNumberOfEdges()), null, multiSource);
+    }
+
+    @Override
+    public void accumulate(final Accumulator edgeHighwayness, final int s) {
         // Get paths starting at s
-        final Pair<Pair<IntArrayList[], Stack<Integer>>, Pair<double[],  double[]>> result = computeExploration(s);
-        final IntArrayList[] pred = result.x.x;
-        final Stack<Integer> S = result.x.y;
-        final double[] totalLength = result.y.y;
+        final ShortestPathDag dag = computeExploration(s);
+        final double[] totalLength = dag.totalDistance;
 
         // Start exploration of SP tree from leaves
         // and sum up all the 1/d(s,v) up on the way to s
 
         // Edges don't have to be summed up for all targets but the sums are aggregated over the way
         // to the source and then the fraction of the edge length (distance) to aggregated length is taken
-        final double[] sigma = new double[n];
+        final double[] sigma = dag.delta;
 
         // Go through all vertices in SP tree from last settled to first settled
         // That assures that a vertex is not picked before its sigma value is fully computed.
-        while (!S.empty()) {
-            final int w = S.pop();
+        for (int k = dag.size - 1; k >= 0; k--) {
+            final int w = dag.order[k];
 
             // TODO: is this check really needed? just dont add sigma for those
             if (w != s) {
                 // Get predecessor of a node
 
-                for (final int v: pred[w]) {
-                    // There is an edge (v,w)
-                    final IntSet edges = g.getEdgesConnecting(v, w);
-
-                    if (edges.size() != 1) {
-                        throw new IllegalStateException("Does not allow multi-edges");
-                    }
-
-                    final int e = edges.iterator().nextInt();
+                for (int l = dag.predFirst[w]; l != -1; l = dag.predNext[l]) {
+                    // There is an edge e=(v,w)
+                    final int v = dag.predVertex[l];
+                    final int e = dag.predEdge[l];
 
                     final double sig = sigma[w] + 1.0 / totalLength[w];
 
                     sigma[v] += sig;
 
                     // Here we take distance(e) into account
-                    edgeHighwayness.put(e, sig);
+                    edgeHighwayness.add(e, sig);
                 }
             }
         }
+    }
+
+    @Override
+    public int getBatchSize() {
+        return multiSource ? MultiSourceBfs.WIDTH : 1;
+    }
+
+    @Override
+    public void accumulateBatch(
+            final Accumulator edgeHighwayness,
+            final int[] sources,
+            final int begin,
+            final int end
+    ) {
+        if (!multiSource) {
+            super.accumulateBatch(edgeHighwayness, sources, begin, end);
+            return;
+        }
+
+        final MultiSourceBfs bfs = computeExploration(sources, begin, end);
+        final int W = MultiSourceBfs.WIDTH;
+        final double[] totalLength = bfs.totalDistance;
+        final double[] sigma = bfs.delta;
+
+        // Same sweep as above for all lanes, level by level instead of in settled order
+        for (int level = bfs.levels - 1; level >= 1; level--) {
+            bfs.markLevel(level - 1);
+
+            for (int k = bfs.levelBegin[level]; k < bfs.levelBegin[level + 1]; k++) {
+                final int w = bfs.entryVertex[k];
+                final long mw = bfs.entryMask[k];
 
-        return edgeHighwayness;
+                for (int i = g.getInBegin(w); i < g.getInEnd(w); i++) {
+                    final int v = g.getInTail(i);
+                    double sum = 0.0;
+
+                    for (long mask = mw & bfs.levelMask[v]; mask != 0; mask &= mask - 1) {
+                        final int l = Long.numberOfTrailingZeros(mask);
+                        final double sig = sigma[w * W + l] + 1.0 / totalLength[w * W + l];
+
+                        sigma[v * W + l] += sig;
+                        sum += sig;
+                    }
+
+                    if (sum != 0.0) {
+                        edgeHighwayness.add(g.getInEdge(i), sum);
+                    }
+                }
+            }
+
+            bfs.unmarkLevel(level - 1);
+        }
     }
 }
@@ -0,0 +1,272 @@
+package highways.algo;
+
+import highways.ReadOnlyGraph;
+import highways.utils.Accumulator;
+import highways.utils.DoubleSparseFunction;
+import highways.utils.Settings;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+// Several metrics from one shortest path search per source and one backward sweep over its DAG.
+// The results of all metrics are concatenated, metric k starts at offset(k), so the kernel runs with the
+// same schedulers, checkpoints and accumulators as the single metric kernels.
+//
+// The search tracks the PHD distance if PHD is computed. Highwayness length needs the fewest arcs along a
+// shortest path instead, which is then filled in by a forward pass over the settled order.
+public class MultiMetricKernel implements SourceKernel {
+    public enum Metric {
+        EDGE_BETWEENNESS("edge_betweenness", false),
+        VERTEX_BETWEENNESS("vertex_betweenness", true),
+        HIGHWAYNESS_LENGTH("highwayness_length", false),
+        PHD("phd", false),
+        // (reached - 1) / sum of shortest path weights to all reached vertices
+        CLOSENESS("closeness", true);
+
+        public final String label;
+        public final boolean perVertex;
+
+        Metric(final String label, final boolean perVertex) {
+            this.label = label;
+            this.perVertex = perVertex;
+        }
+
+        // Comma separated labels from HIGHWAYS_METRICS, all metrics but PHD by default
+        public static Set<Metric> fromSettings() {
+            final String value = Settings.get("HIGHWAYS_METRICS", null);
+
+            if (value == null) {
+                return EnumSet.complementOf(EnumSet.of(PHD));
+            }
+
+            final Set<Metric> metrics = EnumSet.noneOf(Metric.class);
+
+            for (final String label: value.split(",")) {
+                metrics.add(Metric.valueOf(label.trim().toUpperCase(Locale.ROOT)));
+            }
+
+            return metrics;
+        }
+    }
+
+    private final ReadOnlyGraph g;
+    private final Set<Metric> metrics;
+    private final DoubleSparseFunction distance;
+    // Distance tracked by the search, the PHD distance or arc counts for highwayness length
+    private final DoubleSparseFunction searchDistance;
+    private final int[] offset;
+    private final int resultSize;
+    private final boolean edgeBetweenness;
+    private final boolean vertexBetweenness;
+    private final boolean length;
+    private final boolean phd;
+    private final boolean closeness;
+    private final double uniformWeight;
+
+    private final ThreadLocal<Workspace> workspace;
+    // Searches over compressed chains, null to search the graph directly
+    private final ThreadLocal<ChainSearch> chainWorkspace;
+
+    private static class Workspace {
+        final ShortestPathDag dag;
+        // Backward sums of highwayness length and PHD, zero between sources
+        final double[] lengthSum;
+        final double[] distanceSum;
+        // Fewest arcs along a shortest path if the search tracks the PHD distance, infinite between sources
+        final double[] arcs;
+
+        Workspace(final ReadOnlyGraph g) {
+            final int n = g.getNumberOfVertices();
+
+            dag = new ShortestPathDag(g);
+            lengthSum = new double[n];
+            distanceSum = new double[n];
+            arcs = new double[n];
+
+            for (int v = 0; v < n; v++) {
+                arcs[v] = Double.POSITIVE_INFINITY;
+            }
+        }
+    }
+
+    public MultiMetricKernel(
+            final ReadOnlyGraph g,
+            final Set<Metric> metrics,
+            final DoubleSparseFunction distance,
+            final ChainCompression chains
+    ) {
+        if (metrics.isEmpty()) {
+            throw new IllegalArgumentException("No metric selected");
+        }
+
+        if (metrics.contains(Metric.PHD) && distance == null) {
+            throw new IllegalArgumentException("PHD needs a distance");
+        }
+
+        this.g = g;
+        this.metrics = EnumSet.copyOf(metrics);
+        this.distance = distance;
+        this.edgeBetweenness = metrics.contains(Metric.EDGE_BETWEENNESS);
+        this.vertexBetweenness = metrics.contains(Metric.VERTEX_BETWEENNESS);
+        this.length = metrics.contains(Metric.HIGHWAYNESS_LENGTH);
+        this.phd = metrics.contains(Metric.PHD);
+        this.closeness = metrics.contains(Metric.CLOSENESS);
+
+        if (phd) {
+            this.searchDistance = distance;
+        } else if (length) {
+            this.searchDistance = HighwaynessLength.uniform(g.getNumberOfEdges());
+        } else {
+            this.searchDistance = null;
+        }
+
+        this.offset = new int[Metric.values().length];
+
+        int size = 0;
+
+        for (final Metric metric: this.metrics) {
+            offset[metric.ordinal()] = size;
+            size += metric.perVertex ? g.getNumberOfVertices() : g.getNumberOfEdges();
+        }
+
+        this.resultSize = size;
+        this.uniformWeight = g.hasUniformWeights() ? g.getOutWeight(0) : 0.0;
+        this.workspace = ThreadLocal.withInitial(() -> new Workspace(g));
+        this.chainWorkspace = chains == null ? null : ThreadLocal.withInitial(() -> new ChainSearch(chains));
+    }
+
+    public Set<Metric> getMetrics() {
+        return metrics;
+    }
+
+    // Start of the results of metric in the concatenated results
+    public int offset(final Metric metric) {
+        if (!metrics.contains(metric)) {
+            throw new IllegalArgumentException("Metric " + metric.label + " is not computed");
+        }
+
+        return offset[metric.ordinal()];
+    }
+
+    @Override
+    public int getResultSize() {
+        return resultSize;
+    }
+
+    // Weight of the shortest path to v, the DAG keeps units or arc counts unless weights are doubles
+    private double pathWeight(final ShortestPathDag dag, final int v) {
+        if (dag.totalWeight != null) {
+            return dag.totalWeight[v];
+        }
+
+        if (g.hasUniformWeights()) {
+            return dag.totalUnits[v] * uniformWeight;
+        }
+
+        return g.getFixedPoint().toWeight(dag.totalUnits[v]);
+    }
+
+    @Override
+    public void accumulate(final Accumulator result, final int s) {
+        final Workspace ws = workspace.get();
+        final ShortestPathDag dag;
+
+        if (chainWorkspace != null) {
+            dag = chainWorkspace.get().compute(s, searchDistance);
+        } else {
+            dag = ws.dag;
+            dag.compute(g, s, searchDistance);
+        }
+
+        final boolean betweenness = edgeBetweenness || vertexBetweenness;
+
+        final int edgeOffset = offset[Metric.EDGE_BETWEENNESS.ordinal()];
+        final int vertexOffset = offset[Metric.VERTEX_BETWEENNESS.ordinal()];
+        final int lengthOffset = offset[Metric.HIGHWAYNESS_LENGTH.ordinal()];
+        final int phdOffset = offset[Metric.PHD.ordinal()];
+
+        final double[] sigma = dag.sigma;
+        final double[] delta = dag.delta;
+        final double[] lengthSum = ws.lengthSum;
+        final double[] distanceSum = ws.distanceSum;
+        final double[] arcs = phd && length ? ws.arcs : dag.totalDistance;
+
+        // Same minimum over tied predecessors as the search computes for its own distance
+        if (phd && length) {
+            for (int k = 0; k < dag.size; k++) {
+                final int w = dag.order[k];
+                double fewest = w == s ? 0.0 : Double.POSITIVE_INFINITY;
+
+                for (int l = dag.predFirst[w]; l != -1; l = dag.predNext[l]) {
+                    fewest = Math.min(fewest, arcs[dag.predVertex[l]] + 1.0);
+                }
+
+                arcs[w] = fewest;
+            }
+        }
+
+        double farness = 0.0;
+
+        for (int k = dag.size - 1; k >= 0; k--) {
+            final int w = dag.order[k];
+
+            if (w == s) {
+                continue;
+            }
+
+            if (vertexBetweenness) {
+                result.add(vertexOffset + w, delta[w]);
+            }
+
+            if (closeness) {
+                farness += pathWeight(dag, w);
+            }
+
+            for (int l = dag.predFirst[w]; l != -1; l = dag.predNext[l]) {
+                final int v = dag.predVertex[l];
+                final int e = dag.predEdge[l];
+
+                if (betweenness) {
+                    final double c = sigma[v] / sigma[w] * (1.0 + delta[w]);
+
+                    delta[v] += c;
+
+                    if (edgeBetweenness) {
+                        result.add(edgeOffset + e, c);
+                    }
+                }
+
+                if (length) {
+                    final double sig = lengthSum[w] + 1.0 / arcs[w];
+
+                    lengthSum[v] += sig;
+                    result.add(lengthOffset + e, sig);
+                }
+
+                if (phd) {
+                    final double sig = distanceSum[w] + 1.0 / dag.totalDistance[w];
+
+                    distanceSum[v] += sig;
+                    result.add(phdOffset + e, sig * distance.applyAsDouble(e));
+                }
+            }
+
+            lengthSum[w] = 0.0;
+            distanceSum[w] = 0.0;
+        }
+
+        lengthSum[s] = 0.0;
+        distanceSum[s] = 0.0;
+
+        if (phd && length) {
+            for (int k = 0; k < dag.size; k++) {
+                arcs[dag.order[k]] = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        if (closeness && farness > 0.0) {
+            result.add(offset[Metric.CLOSENESS.ordinal()] + s, (dag.size - 1) / farness);
+        }
+    }
+}
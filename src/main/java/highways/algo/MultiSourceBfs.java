@@ -0,0 +1,210 @@
+package highways.algo;
+
+import highways.ReadOnlyGraph;
+import highways.utils.DoubleSparseFunction;
+
+import java.util.Arrays;
+
+// Breadth-first search from up to 64 sources at once for graphs with uniform weights.
+// Lane l of a bit mask stands for the source sources[l], so one adjacency scan serves all sources
+// that reach a vertex in the same level.
+//
+// The search records which vertices were discovered in which lanes per level: entries levelBegin[d]
+// until (exclusive) levelBegin[d + 1] belong to level d. Per lane values are stored at v * WIDTH + l,
+// so the lanes of one vertex lie next to each other.
+//
+// Like ShortestPathDag an instance is reused by one thread, only discovered entries are reset.
+public class MultiSourceBfs {
+    public static final int WIDTH = Long.SIZE;
+    // Largest array the JVM allocates
+    private static final long MAX_LANE_VALUES = Integer.MAX_VALUE - 8;
+
+    public final int[] sources = new int[WIDTH];
+    public int lanes;
+
+    public int[] entryVertex;
+    public long[] entryMask;
+    public int entries;
+    public final int[] levelBegin;
+    public int levels;
+
+    public final double[] sigma;
+    // Dependencies accumulated by the backward pass, all zero after compute()
+    public final double[] delta;
+    // Minimum distance along shortest paths, only allocated if a distance function is used
+    public final double[] totalDistance;
+
+    // Lanes in which a vertex is in the level marked by markLevel()
+    public final long[] levelMask;
+
+    private final long[] visited;
+    private final long[] next;
+
+    // Per lane arrays and v * WIDTH + l indices are ints, kernels check this when they enable batches
+    public static void checkSize(final int n) {
+        if ((long)n * WIDTH > MAX_LANE_VALUES) {
+            throw new IllegalArgumentException("Graph with " + n + " vertices is too large for multi-source search, "
+                    + "at most " + MAX_LANE_VALUES / WIDTH + " vertices are supported");
+        }
+    }
+
+    public MultiSourceBfs(final ReadOnlyGraph g, final boolean withDistance) {
+        final int n = g.getNumberOfVertices();
+
+        checkSize(n);
+
+        entryVertex = new int[n];
+        entryMask = new long[n];
+        levelBegin = new int[n + 2];
+
+        sigma = new double[n * WIDTH];
+        delta = new double[n * WIDTH];
+        totalDistance = withDistance ? new double[n * WIDTH] : null;
+
+        if (totalDistance != null) {
+            Arrays.fill(totalDistance, Double.POSITIVE_INFINITY);
+        }
+
+        levelMask = new long[n];
+        visited = new long[n];
+        next = new long[n];
+    }
+
+    private void reset() {
+        for (int k = 0; k < entries; k++) {
+            final int v = entryVertex[k];
+
+            for (long mask = entryMask[k]; mask != 0; mask &= mask - 1) {
+                final int i = v * WIDTH + Long.numberOfTrailingZeros(mask);
+
+                sigma[i] = 0.0;
+                delta[i] = 0.0;
+
+                if (totalDistance != null) {
+                    totalDistance[i] = Double.POSITIVE_INFINITY;
+                }
+            }
+
+            visited[v] = 0;
+        }
+
+        entries = 0;
+        levels = 0;
+    }
+
+    private void addEntry(final int v, final long mask) {
+        if (entries == entryVertex.length) {
+            entryVertex = Arrays.copyOf(entryVertex, 2 * entries);
+            entryMask = Arrays.copyOf(entryMask, 2 * entries);
+        }
+
+        entryVertex[entries] = v;
+        entryMask[entries] = mask;
+        entries++;
+    }
+
+    public void compute(
+            final ReadOnlyGraph g,
+            final int[] batch,
+            final int begin,
+            final int end,
+            final DoubleSparseFunction distance
+    ) {
+        if (!g.hasUniformWeights()) {
+            throw new IllegalArgumentException("Multi-source search requires uniform weights");
+        }
+
+        if (end - begin > WIDTH) {
+            throw new IllegalArgumentException("At most " + WIDTH + " sources can be searched at once");
+        }
+
+        reset();
+
+        lanes = end - begin;
+
+        for (int l = 0; l < lanes; l++) {
+            final int s = batch[begin + l];
+
+            if (visited[s] != 0) {
+                throw new IllegalArgumentException("Sources of a batch have to be distinct");
+            }
+
+            sources[l] = s;
+            visited[s] = 1L << l;
+            sigma[s * WIDTH + l] = 1.0;
+
+            if (totalDistance != null) {
+                totalDistance[s * WIDTH + l] = 0.0;
+            }
+
+            addEntry(s, 1L << l);
+        }
+
+        levelBegin[0] = 0;
+        levelBegin[1] = entries;
+        levels = 1;
+
+        while (levelBegin[levels] > levelBegin[levels - 1]) {
+            for (int k = levelBegin[levels - 1]; k < levelBegin[levels]; k++) {
+                final int v = entryVertex[k];
+                final long mv = entryMask[k];
+
+                for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                    final int w = g.getOutHead(i);
+                    // Lanes in which w is one level below v
+                    final long discovered = mv & ~visited[w];
+
+                    if (discovered == 0) {
+                        continue;
+                    }
+
+                    if (next[w] == 0) {
+                        addEntry(w, 0);
+                    }
+
+                    next[w] |= discovered;
+
+                    for (long mask = discovered; mask != 0; mask &= mask - 1) {
+                        final int l = Long.numberOfTrailingZeros(mask);
+
+                        sigma[w * WIDTH + l] += sigma[v * WIDTH + l];
+
+                        if (totalDistance != null) {
+                            totalDistance[w * WIDTH + l] = Math.min(
+                                    totalDistance[w * WIDTH + l],
+                                    totalDistance[v * WIDTH + l] + distance.applyAsDouble(g.getOutEdge(i))
+                            );
+                        }
+                    }
+                }
+            }
+
+            // Lanes of a level are only marked visited once the whole level is expanded
+            for (int k = levelBegin[levels]; k < entries; k++) {
+                final int w = entryVertex[k];
+
+                entryMask[k] = next[w];
+                visited[w] |= next[w];
+                next[w] = 0;
+            }
+
+            levels++;
+            levelBegin[levels] = entries;
+        }
+
+        // The last level is empty
+        levels--;
+    }
+
+    public void markLevel(final int d) {
+        for (int k = levelBegin[d]; k < levelBegin[d + 1]; k++) {
+            levelMask[entryVertex[k]] = entryMask[k];
+        }
+    }
+
+    public void unmarkLevel(final int d) {
+        for (int k = levelBegin[d]; k < levelBegin[d + 1]; k++) {
+            levelMask[entryVertex[k]] = 0;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package highways.algo;
+
+import highways.ReadOnlyGraph;
+import highways.utils.DoubleSparseFunction;
+import highways.utils.IndexedPriorityQueue;
+
+// Shortest path DAG of a single source.
+// Predecessor links are kept as singly linked lists in flat arrays: the links of w start at predFirst[w]
+// and continue with predNext[l] until -1. Each link stores the predecessor vertex and the edge it was reached by,
+// so the backward pass never has to look up edges between two vertices.
+//
+// An instance is meant to be reused for many sources by one thread: all arrays are allocated once
+// and only the entries touched by the previous source are reset.
+public class ShortestPathDag {
+    public int source;
+
+    // Settled vertices in the order they were settled
+    public final int[] order;
+    public int size;
+
+    // Only one of them is allocated, units are used if the graph has fixed-point weights.
+    // For uniform weights the units count arcs.
+    public final double[] totalWeight;
+    public final long[] totalUnits;
+    // Shortest distance along any shortest path (by weight), if a distance function is given.
+    // Taking the minimum over tied predecessors keeps it independent of the queue's tie breaking.
+    public final double[] totalDistance;
+    // Path counts exceed any integer type on grids, so they are kept as doubles
+    public final double[] sigma;
+    // Dependencies accumulated by the backward pass, all zero after compute()
+    public final double[] delta;
+
+    public final int[] predFirst;
+    public final int[] predNext;
+    public final int[] predVertex;
+    public final int[] predEdge;
+    public int links;
+
+    // Vertices with a finite totalWeight or totalUnits, the only entries that have to be reset
+    private final int[] touched;
+    private int numTouched;
+
+    private final IndexedPriorityQueue queue;
+    private final boolean uniformWeights;
+
+    // Ranked searches: vertices ranked after the source that are not settled yet (-1 otherwise), and the weight
+    // of the last one, up to which tied vertices are still settled
+    private int[] rank;
+    private int remaining;
+    private double stopWeight;
+
+    public ShortestPathDag(final ReadOnlyGraph g) {
+        this(g, IndexedPriorityQueue.create(g.getNumberOfVertices()));
+    }
+
+    public ShortestPathDag(final ReadOnlyGraph g, final IndexedPriorityQueue queue) {
+        this.queue = queue;
+        this.uniformWeights = g.hasUniformWeights();
+
+        final int n = g.getNumberOfVertices();
+        final int arcs = g.getNumberOfArcs();
+
+        order = new int[n];
+        totalWeight = g.getFixedPoint() == null && !uniformWeights ? new double[n] : null;
+        totalUnits = totalWeight == null ? new long[n] : null;
+        totalDistance = new double[n];
+        sigma = new double[n];
+        delta = new double[n];
+        predFirst = new int[n];
+        touched = new int[n];
+
+        predNext = new int[arcs];
+        predVertex = new int[arcs];
+        predEdge = new int[arcs];
+
+        for (int i = 0; i < n; i++) {
+            if (totalWeight != null) {
+                totalWeight[i] = Double.POSITIVE_INFINITY;
+            } else {
+                totalUnits[i] = Long.MAX_VALUE;
+            }
+
+            totalDistance[i] = Double.POSITIVE_INFINITY;
+            predFirst[i] = -1;
+        }
+    }
+
+    private void reset() {
+        for (int k = 0; k < numTouched; k++) {
+            final int v = touched[k];
+
+            if (totalWeight != null) {
+                totalWeight[v] = Double.POSITIVE_INFINITY;
+            } else {
+                totalUnits[v] = Long.MAX_VALUE;
+            }
+
+            totalDistance[v] = Double.POSITIVE_INFINITY;
+            sigma[v] = 0.0;
+            delta[v] = 0.0;
+            predFirst[v] = -1;
+        }
+
+        numTouched = 0;
+        queue.clear();
+    }
+
+    // Searches that fill the DAG themselves (ChainSearch) start with begin, call reach once for every vertex
+    // they reach and link for every predecessor
+    void begin(final int s) {
+        reset();
+
+        source = s;
+        size = 0;
+        links = 0;
+
+        reach(s, 0.0);
+        totalDistance[s] = 0.0;
+        sigma[s] = 1.0;
+    }
+
+    void reach(final int v, final double weight) {
+        touched[numTouched++] = v;
+
+        if (totalWeight != null) {
+            totalWeight[v] = weight;
+        } else {
+            totalUnits[v] = (long) weight;
+        }
+    }
+
+    void link(final int v, final int w, final int e) {
+        predVertex[links] = v;
+        predEdge[links] = e;
+        predNext[links] = predFirst[w];
+        predFirst[w] = links;
+        links++;
+    }
+
+    public void compute(final ReadOnlyGraph g, final int s, final DoubleSparseFunction distance) {
+        compute(g, s, distance, -1);
+    }
+
+    // Stops as soon as all vertices ranked after s are settled (rank is a permutation), see SymmetricPairs.
+    // Every vertex that is not settled then lies behind all of them, so it never adds to their dependencies.
+    public void computeRanked(final ReadOnlyGraph g, final int s, final DoubleSparseFunction distance, final int[] rank) {
+        this.rank = rank;
+        this.remaining = rank.length - 1 - rank[s];
+        this.stopWeight = Double.POSITIVE_INFINITY;
+
+        if (remaining == 0) {
+            begin(s);
+            order[size++] = s;
+        } else {
+            search(g, s, distance, -1);
+        }
+
+        this.rank = null;
+    }
+
+    // Stops as soon as target is settled, its path count and predecessors are final by then
+    public void compute(final ReadOnlyGraph g, final int s, final DoubleSparseFunction distance, final int target) {
+        remaining = -1;
+        search(g, s, distance, target);
+    }
+
+    // Counts a settled vertex for a ranked search, true once the last vertex ranked after the source is settled
+    private boolean settleRanked(final int v, final double weight) {
+        if (remaining > 0 && rank[v] > rank[source] && --remaining == 0) {
+            stopWeight = weight;
+            return true;
+        }
+
+        return false;
+    }
+
+    private void search(final ReadOnlyGraph g, final int s, final DoubleSparseFunction distance, final int target) {
+        reset();
+
+        source = s;
+        size = 0;
+        links = 0;
+
+        totalDistance[s] = 0.0;
+        sigma[s] = 1.0;
+        touched[numTouched++] = s;
+
+        if (uniformWeights) {
+            totalUnits[s] = 0;
+            exploreLevels(g, distance, target);
+        } else if (totalWeight != null) {
+            totalWeight[s] = 0.0;
+            queue.insert(s, 0.0);
+            exploreWeights(g, s, distance, target);
+        } else {
+            totalUnits[s] = 0;
+            queue.insert(s, 0.0);
+            exploreUnits(g, s, distance, target);
+        }
+    }
+
+    // Breadth-first search, the settled order doubles as FIFO queue
+    private void exploreLevels(final ReadOnlyGraph g, final DoubleSparseFunction distance, final int target) {
+        order[size++] = source;
+
+        for (int head = 0; head < size; head++) {
+            final int v = order[head];
+
+            // Without zero weights nothing tied with the last ranked vertex can precede it
+            if (v == target || settleRanked(v, totalUnits[v])) {
+                size = head + 1;
+                break;
+            }
+
+            final long level = totalUnits[v] + 1;
+
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                final int w = g.getOutHead(i);
+
+                // Path discovery, the first discovery is final
+                if (totalUnits[w] == Long.MAX_VALUE) {
+                    touched[numTouched++] = w;
+                    order[size++] = w;
+                    totalUnits[w] = level;
+                }
+
+                // Path counting
+                if (totalUnits[w] == level) {
+                    sigma[w] += sigma[v];
+
+                    if (distance != null) {
+                        totalDistance[w] = Math.min(totalDistance[w], totalDistance[v] + distance.applyAsDouble(g.getOutEdge(i)));
+                    }
+
+                    predVertex[links] = v;
+                    predEdge[links] = g.getOutEdge(i);
+                    predNext[links] = predFirst[w];
+                    predFirst[w] = links;
+                    links++;
+                }
+            }
+        }
+    }
+
+    private void exploreWeights(final ReadOnlyGraph g, final int s, final DoubleSparseFunction distance, final int target) {
+        while (!queue.isEmpty() && !(remaining == 0 && queue.peekKey() > stopWeight)) {
+            final int v = queue.poll();
+
+            order[size++] = v;
+
+            if (v == target) {
+                break;
+            }
+
+            final double wv = totalWeight[v];
+
+            settleRanked(v, wv);
+
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                final int w = g.getOutHead(i);
+                final double potentialWeight = wv + g.getOutWeight(i);
+
+                // Path discovery
+                if (totalWeight[w] > potentialWeight) {
+                    if (totalWeight[w] == Double.POSITIVE_INFINITY) {
+                        touched[numTouched++] = w;
+                    }
+
+                    totalWeight[w] = potentialWeight;
+                    queue.insertOrDecrease(w, potentialWeight);
+                    sigma[w] = 0.0;
+                    predFirst[w] = -1;
+                    totalDistance[w] = Double.POSITIVE_INFINITY;
+                }
+
+                // Path counting
+                // If s=w and d(v)=0 and c(v,w)=0, it can happen that you end up here
+                if (totalWeight[w] == potentialWeight && w != s) {
+                    sigma[w] += sigma[v];
+
+                    if (distance != null) {
+                        totalDistance[w] = Math.min(totalDistance[w], totalDistance[v] + distance.applyAsDouble(g.getOutEdge(i)));
+                    }
+
+                    predVertex[links] = v;
+                    predEdge[links] = g.getOutEdge(i);
+                    predNext[links] = predFirst[w];
+                    predFirst[w] = links;
+                    links++;
+                }
+            }
+        }
+    }
+
+    private void exploreUnits(final ReadOnlyGraph g, final int s, final DoubleSparseFunction distance, final int target) {
+        while (!queue.isEmpty() && !(remaining == 0 && queue.peekKey() > stopWeight)) {
+            final int v = queue.poll();
+
+            order[size++] = v;
+
+            if (v == target) {
+                break;
+            }
+
+            final long uv = totalUnits[v];
+
+            settleRanked(v, uv);
+
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                final int w = g.getOutHead(i);
+                final long potentialUnits = uv + g.getOutUnits(i);
+
+                // Path discovery
+                if (totalUnits[w] > potentialUnits) {
+                    if (totalUnits[w] == Long.MAX_VALUE) {
+                        touched[numTouched++] = w;
+                    }
+
+                    totalUnits[w] = potentialUnits;
+                    // Path lengths stay far below 2^53 units, so the double key is exact
+                    queue.insertOrDecrease(w, potentialUnits);
+                    sigma[w] = 0.0;
+                    predFirst[w] = -1;
+                    totalDistance[w] = Double.POSITIVE_INFINITY;
+                }
+
+                // Path counting
+                // If s=w and d(v)=0 and c(v,w)=0, it can happen that you end up here
+                if (totalUnits[w] == potentialUnits && w != s) {
+                    sigma[w] += sigma[v];
+
+                    if (distance != null) {
+                        totalDistance[w] = Math.min(totalDistance[w], totalDistance[v] + distance.applyAsDouble(g.getOutEdge(i)));
+                    }
+
+                    predVertex[links] = v;
+                    predEdge[links] = g.getOutEdge(i);
+                    predNext[links] = predFirst[w];
+                    predFirst[w] = links;
+                    links++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package highways.algo;
+
+import highways.utils.Accumulator;
+
+// Single source part of an all-sources algorithm, the result is the sum over all sources
+public interface SourceKernel {
+    int getResultSize();
+
+    void accumulate(final Accumulator result, final int s);
+
+    // Differs between kernels whose per-source results differ on the same graph, checkpoints and shards only
+    // combine results of the same configuration
+    default String getConfiguration() {
+        return getClass().getSimpleName();
+    }
+
+    // Number of sources accumulateBatch() handles together, the scheduler hands out batches of this size
+    default int getBatchSize() {
+        return 1;
+    }
+
+    default void accumulateBatch(final Accumulator result, final int[] sources, final int begin, final int end) {
+        for (int i = begin; i < end; i++) {
+            accumulate(result, sources[i]);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package highways.algo;
+
+import highways.ReadOnlyGraph;
+import highways.utils.Settings;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// Order in which a scheduler hands out sources, a permutation never changes the summed result.
+// Locality: breadth-first order over both arc directions, so consecutive sources explore overlapping parts
+// of the graph while their data is still cached.
+// Cost: locality order cut into segments, every segment is rated by the settled vertices and predecessor links
+// of one sampled source. Expensive segments come first, so no long source is left for the end of a run.
+public class SourceOrdering {
+    public enum Type {
+        NONE,
+        LOCALITY,
+        COST
+    }
+
+    private static final int COST_SAMPLES = 256;
+
+    private final Type type;
+    // Position of every vertex in breadth-first order
+    private final int[] rank;
+    private final int[] byRank;
+    // Estimated cost of every vertex, null unless ordered by cost
+    private final int[] cost;
+
+    public static SourceOrdering fromSettings(final ReadOnlyGraph g) {
+        return new SourceOrdering(g, Type.valueOf(Settings.get("HIGHWAYS_ORDER", "locality").toUpperCase(Locale.ROOT)));
+    }
+
+    public SourceOrdering(final ReadOnlyGraph g, final Type type) {
+        this.type = type;
+        this.rank = type == Type.NONE ? null : breadthFirstRank(g);
+        this.byRank = rank == null ? null : invert(rank);
+        this.cost = type == Type.COST ? sampleCost(g, byRank) : null;
+    }
+
+    public int[] order(final int[] sources) {
+        if (type == Type.NONE) {
+            return sources;
+        }
+
+        // Sort key: inverted cost in the upper half, rank in the lower half
+        final long[] keys = new long[sources.length];
+
+        for (int i = 0; i < sources.length; i++) {
+            final long c = cost == null ? 0 : Integer.MAX_VALUE - cost[sources[i]];
+            keys[i] = c << 32 | rank[sources[i]];
+        }
+
+        Arrays.sort(keys);
+
+        final int[] ordered = new int[sources.length];
+
+        for (int i = 0; i < keys.length; i++) {
+            ordered[i] = byRank[(int) keys[i]];
+        }
+
+        return ordered;
+    }
+
+    private static int[] breadthFirstRank(final ReadOnlyGraph g) {
+        final int n = g.getNumberOfVertices();
+        final int[] rank = new int[n];
+        final int[] queue = new int[n];
+        int size = 0;
+
+        Arrays.fill(rank, -1);
+
+        // Restart for vertices that are not reachable from the previous roots
+        for (int root = 0; root < n; root++) {
+            if (rank[root] != -1) {
+                continue;
+            }
+
+            rank[root] = size;
+            queue[size++] = root;
+
+            for (int head = rank[root]; head < size; head++) {
+                final int v = queue[head];
+
+                for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                    final int w = g.getOutHead(i);
+
+                    if (rank[w] == -1) {
+                        rank[w] = size;
+                        queue[size++] = w;
+                    }
+                }
+
+                for (int i = g.getInBegin(v); i < g.getInEnd(v); i++) {
+                    final int w = g.getInTail(i);
+
+                    if (rank[w] == -1) {
+                        rank[w] = size;
+                        queue[size++] = w;
+                    }
+                }
+            }
+        }
+
+        return rank;
+    }
+
+    private static int[] invert(final int[] rank) {
+        final int[] byRank = new int[rank.length];
+
+        for (int v = 0; v < rank.length; v++) {
+            byRank[rank[v]] = v;
+        }
+
+        return byRank;
+    }
+
+    private static int[] sampleCost(final ReadOnlyGraph g, final int[] byRank) {
+        final int n = g.getNumberOfVertices();
+        final int segments = Math.min(COST_SAMPLES, n);
+        final int[] segmentCost = new int[segments];
+
+        final ShortestPathDag dag = new ShortestPathDag(g);
+
+        for (int s = 0; s < segments; s++) {
+            // Middle of the segment
+            final int sample = byRank[(int) (((2L * s + 1) * n) / (2L * segments))];
+            dag.compute(g, sample, null);
+            segmentCost[s] = (int) Math.min(Integer.MAX_VALUE, (long) dag.size + dag.links);
+        }
+
+        final int[] cost = new int[n];
+
+        for (int r = 0; r < n; r++) {
+            cost[byRank[r]] = segmentCost[(int) ((long) r * segments / n)];
+        }
+
+        return cost;
+    }
+}
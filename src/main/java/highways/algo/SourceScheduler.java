@@ -0,0 +1,180 @@
+package highways.algo;
+
+import highways.ReadOnlyGraph;
+import highways.utils.AtomicAccumulator;
+import highways.utils.DenseAccumulator;
+import highways.utils.ProgressCounter;
+import highways.utils.Settings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Blocks of sources are dealt round-robin to per-worker deques. A worker takes blocks from the front of its own deque
+// and, once it is empty, steals from the back of the others, so expensive blocks dealt to one worker do not leave
+// the remaining workers idle at the end of a run.
+public class SourceScheduler {
+    public enum Accumulation {
+        // Every worker sums into its own array, the arrays are added up once at the end
+        THREAD_LOCAL,
+        // All workers share one array with atomic additions
+        SHARED_ATOMIC
+    }
+
+    // Number of sources a worker takes at once
+    private static final int BLOCK_SIZE = 16;
+
+    private final int threads;
+    private final Accumulation accumulation;
+    private boolean reportProgress = true;
+    private SourceOrdering ordering = null;
+
+    // Thread count from HIGHWAYS_THREADS and accumulation from HIGHWAYS_ACCUMULATION
+    public SourceScheduler() {
+        this(
+                Settings.getInt("HIGHWAYS_THREADS", Runtime.getRuntime().availableProcessors()),
+                Accumulation.valueOf(Settings.get("HIGHWAYS_ACCUMULATION", "thread_local").toUpperCase(Locale.ROOT))
+        );
+    }
+
+    // Settings of the no-arg constructor and source order from HIGHWAYS_ORDER
+    public static SourceScheduler fromSettings(final ReadOnlyGraph g) {
+        final SourceScheduler scheduler = new SourceScheduler();
+        scheduler.setOrdering(SourceOrdering.fromSettings(g));
+        return scheduler;
+    }
+
+    public SourceScheduler(final int threads, final Accumulation accumulation) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+
+        this.threads = threads;
+        this.accumulation = accumulation;
+    }
+
+    // Drivers that run many short rounds report progress themselves
+    public void setReportProgress(final boolean reportProgress) {
+        this.reportProgress = reportProgress;
+    }
+
+    public void setOrdering(final SourceOrdering ordering) {
+        this.ordering = ordering;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public double[] run(final SourceKernel kernel, final int numSources) {
+        final int[] sources = new int[numSources];
+
+        for (int s = 0; s < numSources; s++) {
+            sources[s] = s;
+        }
+
+        return run(kernel, sources);
+    }
+
+    public double[] run(final SourceKernel kernel, final int[] givenSources) {
+        final int[] sources = ordering == null ? givenSources : ordering.order(givenSources);
+        final int size = kernel.getResultSize();
+        final int batchSize = kernel.getBatchSize();
+        final int blockSize = Math.max(BLOCK_SIZE, batchSize);
+
+        final ProgressCounter counter = reportProgress ? new ProgressCounter(sources.length) : null;
+
+        if (counter != null) {
+            counter.start();
+        }
+
+        final ConcurrentLinkedDeque<Integer>[] deques = new ConcurrentLinkedDeque[threads];
+
+        for (int t = 0; t < threads; t++) {
+            deques[t] = new ConcurrentLinkedDeque<>();
+        }
+
+        for (int begin = 0, t = 0; begin < sources.length; begin += blockSize, t = (t + 1) % threads) {
+            deques[t].addLast(begin);
+        }
+
+        final AtomicAccumulator shared = accumulation == Accumulation.SHARED_ATOMIC ? new AtomicAccumulator(size) : null;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<DenseAccumulator>> workers = new ArrayList<>(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final int self = t;
+
+            workers.add(executor.submit(() -> {
+                final DenseAccumulator local = shared == null ? new DenseAccumulator(size) : null;
+
+                for (Integer block; (block = nextBlock(deques, self)) != null; ) {
+                    final int begin = block;
+                    final int end = Math.min(begin + blockSize, sources.length);
+
+                    for (int i = begin; i < end; i += batchSize) {
+                        final int batchEnd = Math.min(i + batchSize, end);
+
+                        kernel.accumulateBatch(shared == null ? local : shared, sources, i, batchEnd);
+
+                        for (int j = i; j < batchEnd && counter != null; j++) {
+                            counter.count();
+                        }
+                    }
+                }
+
+                return local;
+            }));
+        }
+
+        executor.shutdown();
+
+        try {
+            if (shared != null) {
+                for (final Future<DenseAccumulator> worker: workers) {
+                    worker.get();
+                }
+
+                return shared.toArray();
+            }
+
+            // Reduction is O(threads * size), independent of the number of sources
+            final DenseAccumulator sum = workers.get(0).get();
+
+            for (int t = 1; t < threads; t++) {
+                sum.addAll(workers.get(t).get());
+            }
+
+            return sum.values;
+        } catch (InterruptedException | ExecutionException e) {
+            executor.shutdownNow();
+            throw new IllegalStateException("Source computation failed", e);
+        }
+    }
+
+    // Own blocks in dealt order, then the last block of the first other worker that has any left.
+    // No blocks are added during a run, so all deques being empty means the run is done.
+    private static Integer nextBlock(final ConcurrentLinkedDeque<Integer>[] deques, final int self) {
+        final Integer own = deques[self].pollFirst();
+
+        if (own != null) {
+            return own;
+        }
+
+        for (int k = 1; k < deques.length; k++) {
+            final Integer stolen = deques[(self + k) % deques.length].pollLast();
+
+            if (stolen != null) {
+                return stolen;
+            }
+        }
+
+        return null;
+    }
+}
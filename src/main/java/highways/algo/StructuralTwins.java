@@ -0,0 +1,292 @@
+package highways.algo;
+
+import highways.ReadOnlyGraph;
+import highways.utils.DoubleSparseFunction;
+
+import java.util.Arrays;
+
+// Groups of vertices with the same incident edges: the same neighbors over arcs of the same weights and
+// distances in the same directions, e.g. parallel dead ends or stubs attached to the same junction.
+// Swapping two twins together with their edges maps the weighted graph onto itself, so the contribution of one
+// twin as a source is that of another with their edges swapped. Twins are never adjacent, an edge between
+// them would be a self loop of both.
+//
+// The incident edges of a group member are put into slots sorted by neighbor, weights and distance, so slot j
+// of every member is mapped onto slot j of the others.
+public class StructuralTwins {
+    public final ReadOnlyGraph graph;
+
+    // Group of a vertex, -1 if it has no twin
+    public final int[] groupOf;
+    // Members of group b are groupVertices[groupBegin[b]] until (exclusive) groupVertices[groupBegin[b + 1]],
+    // the lowest vertex first, which is the only one run as a source
+    public final int[] groupBegin;
+    public final int[] groupVertices;
+    // Edge in slot j of the i-th member of group b is slotEdges[slotBegin[b] + i * degree(b) + j]
+    public final int[] slotBegin;
+    public final int[] slotEdges;
+    public final int numGroups;
+
+    private final DoubleSparseFunction distance;
+
+    // Slots of two vertices, each slot is edge, neighbor, out-weight, in-weight and distance
+    private final int[][] edge = new int[2][];
+    private final int[][] neighbor = new int[2][];
+    private final double[][] outWeight = new double[2][];
+    private final double[][] inWeight = new double[2][];
+    private final double[][] edgeDistance = new double[2][];
+
+    public StructuralTwins(final ReadOnlyGraph g, final DoubleSparseFunction distance) {
+        final int n = g.getNumberOfVertices();
+
+        this.graph = g;
+        this.distance = distance;
+
+        int maxDegree = 0;
+
+        for (int v = 0; v < n; v++) {
+            maxDegree = Math.max(maxDegree, g.getOutDegree(v) + g.getInDegree(v));
+        }
+
+        for (int k = 0; k < 2; k++) {
+            edge[k] = new int[maxDegree];
+            neighbor[k] = new int[maxDegree];
+            outWeight[k] = new double[maxDegree];
+            inWeight[k] = new double[maxDegree];
+            edgeDistance[k] = new double[maxDegree];
+        }
+
+        // Vertices sorted by the hash of their slots, twins end up in the same run
+        final long[] keys = new long[n];
+        int numKeys = 0;
+
+        for (int v = 0; v < n; v++) {
+            final int slots = collectSlots(v, 0);
+
+            if (slots > 0) {
+                keys[numKeys++] = ((long) hashSlots(slots, 0) << 32) | v;
+            }
+        }
+
+        Arrays.sort(keys, 0, numKeys);
+
+        groupOf = new int[n];
+        Arrays.fill(groupOf, -1);
+
+        final int[] begin = new int[n + 1];
+        final int[] vertices = new int[n];
+        // Vertices of the current hash run that start a group candidate
+        final int[] heads = new int[n];
+        int groups = 0;
+        int slots = 0;
+        int numVertices = 0;
+
+        for (int run = 0; run < numKeys; ) {
+            int runEnd = run + 1;
+
+            while (runEnd < numKeys && keys[runEnd] >>> 32 == keys[run] >>> 32) {
+                runEnd++;
+            }
+
+            // Collisions of the hash are split by comparing the slots
+            int numHeads = 0;
+
+            for (int k = run; k < runEnd; k++) {
+                final int v = (int) keys[k];
+                boolean found = false;
+
+                for (int h = 0; h < numHeads && !found; h++) {
+                    if (sameSlots(heads[h], v)) {
+                        found = true;
+                    }
+                }
+
+                if (!found) {
+                    heads[numHeads++] = v;
+                }
+            }
+
+            for (int h = 0; h < numHeads; h++) {
+                final int head = heads[h];
+                final int groupStart = numVertices;
+
+                for (int k = run; k < runEnd; k++) {
+                    final int v = (int) keys[k];
+
+                    if (v == head || (groupOf[v] == -1 && sameSlots(head, v))) {
+                        vertices[numVertices++] = v;
+                        groupOf[v] = groups;
+                    }
+                }
+
+                if (numVertices - groupStart < 2) {
+                    groupOf[head] = -1;
+                    numVertices = groupStart;
+                    continue;
+                }
+
+                begin[groups++] = groupStart;
+                slots += (numVertices - groupStart) * collectSlots(head, 0);
+            }
+
+            run = runEnd;
+        }
+
+        begin[groups] = numVertices;
+
+        this.numGroups = groups;
+        this.groupBegin = Arrays.copyOf(begin, groups + 1);
+        this.groupVertices = Arrays.copyOf(vertices, numVertices);
+        this.slotBegin = new int[groups + 1];
+        this.slotEdges = new int[slots];
+
+        int slot = 0;
+
+        for (int b = 0; b < groups; b++) {
+            slotBegin[b] = slot;
+
+            for (int k = groupBegin[b]; k < groupBegin[b + 1]; k++) {
+                final int count = collectSlots(groupVertices[k], 0);
+
+                for (int j = 0; j < count; j++) {
+                    slotEdges[slot++] = edge[0][j];
+                }
+            }
+        }
+
+        slotBegin[groups] = slot;
+    }
+
+    public int size(final int b) {
+        return groupBegin[b + 1] - groupBegin[b];
+    }
+
+    public int degree(final int b) {
+        return (slotBegin[b + 1] - slotBegin[b]) / size(b);
+    }
+
+    // Sources that are not run because a twin is run for them
+    public int getNumberOfSkipped() {
+        return groupVertices.length - numGroups;
+    }
+
+    // Slots of v sorted into buffer k, 0 if v has a self loop and is never a twin
+    private int collectSlots(final int v, final int k) {
+        final ReadOnlyGraph g = graph;
+        int count = 0;
+
+        for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+            if (g.getOutHead(i) == v) {
+                return 0;
+            }
+
+            edge[k][count] = g.getOutEdge(i);
+            neighbor[k][count] = g.getOutHead(i);
+            outWeight[k][count] = g.getOutWeight(i);
+            inWeight[k][count] = Double.NaN;
+            count++;
+        }
+
+        for (int i = g.getInBegin(v); i < g.getInEnd(v); i++) {
+            final int e = g.getInEdge(i);
+            int j = 0;
+
+            // The in-arc of an undirected edge joins the slot of its out-arc
+            while (j < count && !(edge[k][j] == e && Double.isNaN(inWeight[k][j]))) {
+                j++;
+            }
+
+            if (j == count) {
+                edge[k][count] = e;
+                neighbor[k][count] = g.getInTail(i);
+                outWeight[k][count] = Double.NaN;
+                count++;
+            }
+
+            inWeight[k][j] = g.getInWeight(i);
+        }
+
+        for (int j = 0; j < count; j++) {
+            edgeDistance[k][j] = distance == null ? 0.0 : distance.applyAsDouble(edge[k][j]);
+        }
+
+        // Degrees are small, insertion sort
+        for (int j = 1; j < count; j++) {
+            for (int l = j; l > 0 && compareSlots(k, l - 1, l) > 0; l--) {
+                swapSlots(k, l - 1, l);
+            }
+        }
+
+        return count;
+    }
+
+    private int compareSlots(final int k, final int a, final int b) {
+        int c = Integer.compare(neighbor[k][a], neighbor[k][b]);
+
+        if (c == 0) {
+            c = Double.compare(outWeight[k][a], outWeight[k][b]);
+        }
+
+        if (c == 0) {
+            c = Double.compare(inWeight[k][a], inWeight[k][b]);
+        }
+
+        if (c == 0) {
+            c = Double.compare(edgeDistance[k][a], edgeDistance[k][b]);
+        }
+
+        return c;
+    }
+
+    private void swapSlots(final int k, final int a, final int b) {
+        final int e = edge[k][a];
+        final int w = neighbor[k][a];
+        final double o = outWeight[k][a];
+        final double i = inWeight[k][a];
+        final double d = edgeDistance[k][a];
+
+        edge[k][a] = edge[k][b];
+        neighbor[k][a] = neighbor[k][b];
+        outWeight[k][a] = outWeight[k][b];
+        inWeight[k][a] = inWeight[k][b];
+        edgeDistance[k][a] = edgeDistance[k][b];
+
+        edge[k][b] = e;
+        neighbor[k][b] = w;
+        outWeight[k][b] = o;
+        inWeight[k][b] = i;
+        edgeDistance[k][b] = d;
+    }
+
+    private int hashSlots(final int count, final int k) {
+        long h = count;
+
+        for (int j = 0; j < count; j++) {
+            h = 31 * h + neighbor[k][j];
+            h = 31 * h + Double.doubleToLongBits(outWeight[k][j]);
+            h = 31 * h + Double.doubleToLongBits(inWeight[k][j]);
+            h = 31 * h + Double.doubleToLongBits(edgeDistance[k][j]);
+        }
+
+        return (int) (h ^ (h >>> 32)) & 0x7fffffff;
+    }
+
+    private boolean sameSlots(final int u, final int v) {
+        final int count = collectSlots(u, 0);
+
+        if (count == 0 || collectSlots(v, 1) != count) {
+            return false;
+        }
+
+        for (int j = 0; j < count; j++) {
+            if (neighbor[0][j] != neighbor[1][j]
+                    || Double.compare(outWeight[0][j], outWeight[1][j]) != 0
+                    || Double.compare(inWeight[0][j], inWeight[1][j]) != 0
+                    || Double.compare(edgeDistance[0][j], edgeDistance[1][j]) != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,119 @@
+package highways.algo;
+
+import highways.ReadOnlyGraph;
+
+import java.util.Arrays;
+
+// Counts every unordered pair of an undirected graph once: the search from s only counts the targets ranked
+// after s, twice, and stops as soon as all of them are settled.
+// Ranks fall with the distance from a center vertex, so the targets of an outer source lie on the inside and
+// its search stops before the far side of the graph. The center is the middle of a long path found by two
+// breadth-first sweeps.
+public class SymmetricPairs {
+    public final int[] rank;
+
+    public SymmetricPairs(final ReadOnlyGraph g) {
+        final int n = g.getNumberOfVertices();
+        final int[] queue = new int[n];
+        final int[] parent = new int[n];
+
+        rank = new int[n];
+
+        if (n == 0) {
+            return;
+        }
+
+        final int a = farthest(g, 0, queue, parent);
+        int center = farthest(g, a, queue, parent);
+        int hops = 0;
+
+        for (int v = center; v != a; v = parent[v]) {
+            hops++;
+        }
+
+        for (int k = 0; k < hops / 2; k++) {
+            center = parent[center];
+        }
+
+        // Farthest from the center by weight first, unreached vertices before all others
+        final ShortestPathDag dag = new ShortestPathDag(g);
+        final boolean[] seen = new boolean[n];
+
+        dag.compute(g, center, null);
+
+        for (int k = 0; k < dag.size; k++) {
+            rank[dag.order[k]] = n - 1 - k;
+            seen[dag.order[k]] = true;
+        }
+
+        int next = 0;
+
+        for (int v = 0; v < n; v++) {
+            if (!seen[v]) {
+                rank[v] = next++;
+            }
+        }
+    }
+
+    // Every edge has two opposite arcs, as CsrGraph stores undirected edges, with a positive weight.
+    // A zero weight ties both ends of an edge, then the predecessors depend on the order vertices are settled in.
+    public static boolean appliesTo(final ReadOnlyGraph g) {
+        if (g.getNumberOfArcs() != 2 * g.getNumberOfEdges()) {
+            return false;
+        }
+
+        final int[] tail = new int[g.getNumberOfEdges()];
+        final int[] head = new int[g.getNumberOfEdges()];
+
+        Arrays.fill(tail, -1);
+
+        for (int v = 0; v < g.getNumberOfVertices(); v++) {
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                final int e = g.getOutEdge(i);
+
+                if (!(g.getOutWeight(i) > 0.0)) {
+                    return false;
+                }
+
+                if (tail[e] == -1) {
+                    tail[e] = v;
+                    head[e] = g.getOutHead(i);
+                } else if (tail[e] != g.getOutHead(i) || head[e] != v) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // Last vertex of a breadth-first search from root, parent leads back to root
+    private static int farthest(final ReadOnlyGraph g, final int root, final int[] queue, final int[] parent) {
+        return queue[sweep(g, root, queue, parent) - 1];
+    }
+
+    // Breadth-first search from root, returns the number of reached vertices in queue
+    private static int sweep(final ReadOnlyGraph g, final int root, final int[] queue, final int[] parent) {
+        Arrays.fill(parent, -2);
+
+        int size = 0;
+
+        parent[root] = -1;
+        queue[size++] = root;
+
+        for (int head = 0; head < size; head++) {
+            final int v = queue[head];
+
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                final int w = g.getOutHead(i);
+
+                if (parent[w] == -2) {
+                    parent[w] = v;
+                    queue[size++] = w;
+                }
+            }
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,253 @@
+package highways.algo;
+
+import highways.CsrGraph;
+import highways.ReadOnlyGraph;
+
+// Strips dead-end trees off a graph until only its 2-core is left.
+// A vertex is folded into its neighbor u if its only arcs are one arc to u and one arc from u, which is repeated
+// until no such vertex is left. Every folded vertex belongs to the tree hanging from one core vertex (its root),
+// all paths between a tree vertex and the rest of the graph pass through that root.
+//
+// The core keeps the original edge ids but renumbers the vertices, so the kernels only run from core vertices
+// and add their results to the original edges directly.
+public class TreeFolding {
+    public final ReadOnlyGraph graph;
+
+    public final CsrGraph core;
+    // Same arcs as the core in the opposite direction
+    public final CsrGraph reverseCore;
+    // Core id to original vertex and original vertex to core id, -1 for folded vertices
+    public final int[] coreVertex;
+    public final int[] coreId;
+
+    // Parent in the tree, -1 for core vertices
+    public final int[] parent;
+    // Edges of the arcs v->parent[v] and parent[v]->v, the same edge if it is undirected
+    public final int[] upEdge;
+    public final int[] downEdge;
+    // Arcs between v and its root
+    public final int[] depth;
+    // Vertices in the subtree of v including v
+    public final int[] subtree;
+
+    // Folded vertices of the tree of core vertex c are treeVertices[treeBegin[c]] until (exclusive)
+    // treeVertices[treeBegin[c + 1]], parents before children
+    public final int[] treeBegin;
+    public final int[] treeVertices;
+    // Vertices of the tree of c including c
+    public final int[] treeSize;
+    // Number of tree vertices of c at depth k is depthCount[depthBegin[c] + k] (the root is at depth 0)
+    public final int[] depthBegin;
+    public final int[] depthCount;
+    public final int maxDepth;
+
+    public TreeFolding(final ReadOnlyGraph g) {
+        final int n = g.getNumberOfVertices();
+
+        this.graph = g;
+
+        parent = new int[n];
+        upEdge = new int[n];
+        downEdge = new int[n];
+        depth = new int[n];
+        subtree = new int[n];
+
+        // Arcs to and from vertices that are not folded yet
+        final int[] outDegree = new int[n];
+        final int[] inDegree = new int[n];
+        final int[] folded = new int[n];
+        int numFolded = 0;
+
+        final int[] stack = new int[n];
+        int stackSize = 0;
+
+        for (int v = 0; v < n; v++) {
+            parent[v] = -1;
+            upEdge[v] = -1;
+            downEdge[v] = -1;
+            subtree[v] = 1;
+            outDegree[v] = g.getOutDegree(v);
+            inDegree[v] = g.getInDegree(v);
+
+            if (outDegree[v] == 1 && inDegree[v] == 1) {
+                stack[stackSize++] = v;
+            }
+        }
+
+        final boolean[] isFolded = new boolean[n];
+
+        while (stackSize > 0) {
+            final int v = stack[--stackSize];
+
+            if (isFolded[v] || outDegree[v] != 1 || inDegree[v] != 1) {
+                continue;
+            }
+
+            int up = -1;
+            int down = -1;
+            int u = -1;
+
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                if (!isFolded[g.getOutHead(i)]) {
+                    u = g.getOutHead(i);
+                    up = g.getOutEdge(i);
+                }
+            }
+
+            for (int i = g.getInBegin(v); i < g.getInEnd(v); i++) {
+                if (!isFolded[g.getInTail(i)] && g.getInTail(i) == u) {
+                    down = g.getInEdge(i);
+                }
+            }
+
+            // One-way dead ends and self loops are left in the core
+            if (down == -1 || u == v) {
+                continue;
+            }
+
+            isFolded[v] = true;
+            folded[numFolded++] = v;
+            parent[v] = u;
+            upEdge[v] = up;
+            downEdge[v] = down;
+
+            outDegree[u]--;
+            inDegree[u]--;
+
+            if (outDegree[u] == 1 && inDegree[u] == 1) {
+                stack[stackSize++] = u;
+            }
+        }
+
+        // Subtree sizes bottom-up: a vertex is always folded before its parent
+        for (int k = 0; k < numFolded; k++) {
+            final int v = folded[k];
+            subtree[parent[v]] += subtree[v];
+        }
+
+        // Roots and depths top-down
+        final int[] root = new int[n];
+        int depthMax = 0;
+
+        for (int v = 0; v < n; v++) {
+            root[v] = v;
+        }
+
+        for (int k = numFolded - 1; k >= 0; k--) {
+            final int v = folded[k];
+            root[v] = root[parent[v]];
+            depth[v] = depth[parent[v]] + 1;
+            depthMax = Math.max(depthMax, depth[v]);
+        }
+
+        maxDepth = depthMax;
+
+        // Core renumbering
+        final int nc = n - numFolded;
+
+        coreVertex = new int[nc];
+        coreId = new int[n];
+
+        for (int v = 0, c = 0; v < n; v++) {
+            if (isFolded[v]) {
+                coreId[v] = -1;
+            } else {
+                coreId[v] = c;
+                coreVertex[c++] = v;
+            }
+        }
+
+        // Tree vertices grouped by root, the top-down order keeps parents before children
+        treeBegin = new int[nc + 1];
+        treeVertices = new int[numFolded];
+        treeSize = new int[nc];
+
+        for (int k = 0; k < numFolded; k++) {
+            treeBegin[coreId[root[folded[k]]] + 1]++;
+        }
+
+        for (int c = 0; c < nc; c++) {
+            treeBegin[c + 1] += treeBegin[c];
+            treeSize[c] = subtree[coreVertex[c]];
+        }
+
+        final int[] pos = new int[nc];
+        System.arraycopy(treeBegin, 0, pos, 0, nc);
+
+        for (int k = numFolded - 1; k >= 0; k--) {
+            final int v = folded[k];
+            treeVertices[pos[coreId[root[v]]]++] = v;
+        }
+
+        // Depth histograms, only as long as the tree is deep
+        depthBegin = new int[nc + 1];
+
+        for (int c = 0; c < nc; c++) {
+            int height = 0;
+
+            for (int k = treeBegin[c]; k < treeBegin[c + 1]; k++) {
+                height = Math.max(height, depth[treeVertices[k]]);
+            }
+
+            depthBegin[c + 1] = depthBegin[c] + height + 1;
+        }
+
+        depthCount = new int[depthBegin[nc]];
+
+        for (int c = 0; c < nc; c++) {
+            depthCount[depthBegin[c]] = 1;
+
+            for (int k = treeBegin[c]; k < treeBegin[c + 1]; k++) {
+                depthCount[depthBegin[c] + depth[treeVertices[k]]]++;
+            }
+        }
+
+        // Core arcs with the original edge ids
+        int arcs = 0;
+
+        for (int c = 0; c < nc; c++) {
+            final int v = coreVertex[c];
+
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                if (!isFolded[g.getOutHead(i)]) {
+                    arcs++;
+                }
+            }
+        }
+
+        final int[] tails = new int[arcs];
+        final int[] heads = new int[arcs];
+        final int[] edges = new int[arcs];
+        final double[] weights = new double[arcs];
+
+        for (int c = 0, j = 0; c < nc; c++) {
+            final int v = coreVertex[c];
+
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                if (!isFolded[g.getOutHead(i)]) {
+                    tails[j] = c;
+                    heads[j] = coreId[g.getOutHead(i)];
+                    edges[j] = g.getOutEdge(i);
+                    weights[j] = g.getOutWeight(i);
+                    j++;
+                }
+            }
+        }
+
+        core = CsrGraph.fromArcs(nc, g.getNumberOfEdges(), tails, heads, edges, weights, g.getFixedPoint());
+        reverseCore = CsrGraph.fromArcs(nc, g.getNumberOfEdges(), heads, tails, edges, weights, g.getFixedPoint());
+    }
+
+    public int getNumberOfFolded() {
+        return graph.getNumberOfVertices() - core.getNumberOfVertices();
+    }
+
+    // Number of tree vertices of c at depth k, 0 beyond the height of the tree
+    public int getDepthCount(final int c, final int k) {
+        return depthBegin[c] + k < depthBegin[c + 1] ? depthCount[depthBegin[c] + k] : 0;
+    }
+
+    public int getHeight(final int c) {
+        return depthBegin[c + 1] - depthBegin[c] - 1;
+    }
+}
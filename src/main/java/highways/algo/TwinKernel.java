@@ -0,0 +1,107 @@
+package highways.algo;
+
+import highways.utils.Accumulator;
+
+// Runs an edge kernel once per group of StructuralTwins instead of once per member.
+// With k members and the contribution c of the lowest member r as source, every edge not incident to the group
+// gets k * c. The edge in slot j of member x gets c(r_j) + (k - 1) * c(x_j), its own contribution from the other
+// members, and the edge of r the contributions of all slots j, which the other members pass to r when they are
+// swapped with it.
+public class TwinKernel implements SourceKernel {
+    private final SourceKernel kernel;
+    private final StructuralTwins twins;
+    private final ThreadLocal<GroupAccumulator> workspace;
+
+    // Collects the contributions to the edges of the current group, passes on all others multiplied
+    private static class GroupAccumulator implements Accumulator {
+        final int[] mark;
+        final double[] local;
+        Accumulator target;
+        double multiplicity;
+        int stamp = 0;
+
+        GroupAccumulator(final int size) {
+            mark = new int[size];
+            local = new double[size];
+        }
+
+        @Override
+        public void add(final int index, final double value) {
+            if (mark[index] == stamp) {
+                local[index] += value;
+            } else {
+                target.add(index, multiplicity * value);
+            }
+        }
+    }
+
+    public TwinKernel(final SourceKernel kernel, final StructuralTwins twins) {
+        if (kernel.getResultSize() != twins.graph.getNumberOfEdges()) {
+            throw new IllegalArgumentException("Twins only apply to edge results");
+        }
+
+        this.kernel = kernel;
+        this.twins = twins;
+        this.workspace = ThreadLocal.withInitial(() -> new GroupAccumulator(kernel.getResultSize()));
+    }
+
+    @Override
+    public int getResultSize() {
+        return kernel.getResultSize();
+    }
+
+    // Skipped twins are counted by their representative
+    @Override
+    public String getConfiguration() {
+        return kernel.getConfiguration() + " twins";
+    }
+
+    @Override
+    public void accumulate(final Accumulator result, final int s) {
+        final int b = twins.groupOf[s];
+
+        if (b == -1) {
+            kernel.accumulate(result, s);
+            return;
+        }
+
+        if (twins.groupVertices[twins.groupBegin[b]] != s) {
+            return;
+        }
+
+        final int k = twins.size(b);
+        final int degree = twins.degree(b);
+        final int slots = twins.slotBegin[b];
+        final int[] edges = twins.slotEdges;
+
+        final GroupAccumulator group = workspace.get();
+        group.target = result;
+        group.multiplicity = k;
+        // Stamps start at 1, unmarked edges are 0
+        group.stamp++;
+
+        for (int i = slots; i < twins.slotBegin[b + 1]; i++) {
+            group.mark[edges[i]] = group.stamp;
+        }
+
+        kernel.accumulate(group, s);
+
+        for (int j = 0; j < degree; j++) {
+            final double own = group.local[edges[slots + j]];
+            double sum = own;
+
+            for (int i = 1; i < k; i++) {
+                final int e = edges[slots + i * degree + j];
+
+                sum += group.local[e];
+                result.add(e, own + (k - 1) * group.local[e]);
+            }
+
+            result.add(edges[slots + j], sum);
+        }
+
+        for (int i = slots; i < twins.slotBegin[b + 1]; i++) {
+            group.local[edges[i]] = 0.0;
+        }
+    }
+}
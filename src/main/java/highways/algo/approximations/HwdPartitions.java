@@ -4,7 +4,9 @@ import highways.FixedGrph;
 import highways.GraphWithWeights;
 import highways.algo.EdgeBetweennessCentrality;
 import highways.algo.HighwaynessLength;
-import highways.utils.MapSparseFunction;
+import highways.utils.DoubleMapSparseFunction;
+import highways.utils.DoubleSparseFunction;
+import highways.utils.IndexedPriorityQueue;
 import highways.utils.Pair;
 import highways.utils.SparseFunction;
 import it.unimi.dsi.fastutil.ints.*;
@@ -14,11 +16,16 @@ import java.util.*;
 
 public class HwdPartitions {
     private final GraphWithWeights<Double> g;
+    private final DoubleSparseFunction weights;
+    // Reused by all partition searches, only the queued vertices are cleared
+    private final IndexedPriorityQueue Q;
 
     public HwdPartitions(
             final GraphWithWeights<Double> g
     ) {
         this.g = g;
+        this.weights = g.doubleWeights();
+        this.Q = IndexedPriorityQueue.create(g.graph.getNumberOfVertices());
     }
 
     public SparseFunction<Integer, Double> computeSkeleton() {
@@ -30,7 +37,7 @@ public class HwdPartitions {
 
         System.out.println("Create partition skeletons");
 
-        final Map<Integer, Double> skeletonEdges = new HashMap<>();
+        final Int2DoubleMap skeletonEdges = new Int2DoubleOpenHashMap();
 
         System.out.println("Get skeleton edges");
 
@@ -44,7 +51,7 @@ public class HwdPartitions {
         }
 
 
-        return new MapSparseFunction<>(skeletonEdges);
+        return new DoubleMapSparseFunction(skeletonEdges);
     }
 
     public SparseFunction<Integer, Double> computeEbtwParallel() {
@@ -74,7 +81,7 @@ public class HwdPartitions {
             }
         }
 
-        return new MapSparseFunction<>(fullEbtw);
+        return new DoubleMapSparseFunction(fullEbtw);
     }
 
     public SparseFunction<Integer, Double> computeHprParallel() {
@@ -104,7 +111,7 @@ public class HwdPartitions {
             }
         }
 
-        return new MapSparseFunction<>(fullHpr);
+        return new DoubleMapSparseFunction(fullHpr);
     }
 
     private IntSet getSkeletonEdges(final Pair<IntSet, IntSet>[] partitions) {
@@ -112,10 +119,10 @@ public class HwdPartitions {
 
         // Go through each partition individually and take its local skeleton
         for (final Pair<IntSet, IntSet> partition: partitions) {
-            final Map<Integer, Double> skeletonWeights = new HashMap<>();
+            final Int2DoubleMap skeletonWeights = new Int2DoubleOpenHashMap();
             final GraphWithWeights<Double> skeleton = new GraphWithWeights<>(
                     new FixedGrph(),
-                    new MapSparseFunction<>(skeletonWeights)
+                    new DoubleMapSparseFunction(skeletonWeights)
             );
 
             final Int2IntMap nodeMapping = new Int2IntOpenHashMap(partition.x.size());
@@ -150,7 +157,7 @@ public class HwdPartitions {
 
                             edgeMapping.put(eM, e);
                             edgeBackMapping.add(eM);
-                            skeletonWeights.put(e, g.weights.apply(eM));
+                            skeletonWeights.put(e, weights.applyAsDouble(eM));
                         }
                     }
                 }
@@ -190,8 +197,8 @@ public class HwdPartitions {
         System.out.println("Number of skeleton edges: " + skeletonEdgesOriginal.size());
 
         // Build a graph from all the partition skeletons
-        final Int2DoubleMap weights = new Int2DoubleOpenHashMap(skeletonEdgesOriginal.size());
-        final GraphWithWeights<Double> skeleton = new GraphWithWeights<>(new FixedGrph(), new MapSparseFunction<>(weights));
+        final Int2DoubleMap skeletonWeights = new Int2DoubleOpenHashMap(skeletonEdgesOriginal.size());
+        final GraphWithWeights<Double> skeleton = new GraphWithWeights<>(new FixedGrph(), new DoubleMapSparseFunction(skeletonWeights));
 
         final Int2IntMap nodeBackMapping = new Int2IntOpenHashMap(n);
 
@@ -218,7 +225,7 @@ public class HwdPartitions {
             }
 
             skeleton.graph.addSimpleEdge(vM, eM, wM, directed);
-            weights.put(eM, g.weights.apply(eM).doubleValue());
+            skeletonWeights.put(eM, weights.applyAsDouble(eM));
         }
 
         final IntSet borderNodes = new IntOpenHashSet();
@@ -263,9 +270,9 @@ public class HwdPartitions {
                     // TODO: they have to be merged
                     // If existing one is directed: replace all with directed and go for lowest directional edge weight
 
-                    final double weight = skeleton.weights.apply(es[0]) + skeleton.weights.apply(es[1]);
+                    final double weight = skeletonWeights.get(es[0]) + skeletonWeights.get(es[1]);
 
-                    weights.put(e, weight);
+                    skeletonWeights.put(e, weight);
                     skeleton.graph.removeVertex(v);
 
                     IntArrayList contraction = new IntArrayList();
@@ -293,7 +300,7 @@ public class HwdPartitions {
 
         final IntArrayList finalBorderNodes = new IntArrayList(borderNodes.size());
         final Int2DoubleMap finalWeights = new Int2DoubleOpenHashMap();
-        final GraphWithWeights<Double> finalSkeleton = new GraphWithWeights<>(new FixedGrph(), new MapSparseFunction<>(finalWeights));
+        final GraphWithWeights<Double> finalSkeleton = new GraphWithWeights<>(new FixedGrph(), new DoubleMapSparseFunction(finalWeights));
         final Int2IntMap finalNodeMapping = new Int2IntOpenHashMap();
         Int2ObjectMap<IntArrayList> finalContractions = new Int2ObjectOpenHashMap<>();
 
@@ -332,7 +339,7 @@ public class HwdPartitions {
                     final boolean directed = skeleton.graph.isDirectedSimpleEdge(eM);
 
                     final int e = finalSkeleton.graph.addSimpleEdge(v, w, directed);
-                    finalWeights.put(e, weights.get(eM));
+                    finalWeights.put(e, skeletonWeights.get(eM));
 
                     if (contractions.containsKey(eM)) {
                         finalContractions.put(e, contractions.get(eM));
@@ -511,15 +518,14 @@ public class HwdPartitions {
         IntSet minBorder = border;
 
         // Initialization
-        final IntSet settled = new IntOpenHashSet();
         final Int2DoubleMap totalWeight = new Int2DoubleOpenHashMap();
         totalWeight.defaultReturnValue(Double.POSITIVE_INFINITY);
         final IntSet stalled = new IntOpenHashSet(); // Nodes that lie behind a node of another partition
 
-        Queue<Pair<Integer, Double>> Q = new PriorityQueue<>(Comparator.comparingDouble(o -> o.y));
+        Q.clear();
 
         totalWeight.put(s, 0.0);
-        Q.add(new Pair<>(s, 0.0));
+        Q.insert(s, 0.0);
         border.add(s);
 
         int l = 0;
@@ -529,13 +535,7 @@ public class HwdPartitions {
         while (!Q.isEmpty() && l < k) {
             l++;
 
-            final int v = Q.remove().x;
-
-            if (settled.contains(v)) {
-                continue;
-            }
-
-            settled.add(v);
+            final int v = Q.poll();
 
             if (!remainingNodes.contains(v)) {
                 stalled.add(v);
@@ -569,7 +569,7 @@ public class HwdPartitions {
                 }
 
                 final int w = endpoints.iterator().nextInt();
-                final double potentialWeight = wv + g.weights.apply(e);
+                final double potentialWeight = wv + weights.applyAsDouble(e);
 
                 // Path discovery
                 if (totalWeight.get(w) > potentialWeight) {
@@ -578,7 +578,7 @@ public class HwdPartitions {
                     }
 
                     totalWeight.put(w, potentialWeight);
-                    Q.add(new Pair<>(w, potentialWeight));
+                    Q.insertOrDecrease(w, potentialWeight);
                 }
 
                 if (totalWeight.get(w) == potentialWeight && w != s) {
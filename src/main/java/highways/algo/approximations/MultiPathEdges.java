@@ -1,17 +1,19 @@
 package highways.algo.approximations;
 
+import highways.CsrGraph;
 import highways.GraphWithWeights;
-import highways.utils.Pair;
+import highways.ReadOnlyGraph;
+import highways.utils.IndexedPriorityQueue;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 
-import java.util.Comparator;
-import java.util.PriorityQueue;
-import java.util.Queue;
-
 public class MultiPathEdges {
     public IntSet compute(final GraphWithWeights<Double> g, final IntSet sources, final IntSet targets) {
+        return compute(CsrGraph.fromGraph(g), sources, targets);
+    }
+
+    public IntSet compute(final ReadOnlyGraph g, final IntSet sources, final IntSet targets) {
         //final ProgressCounter counter = new ProgressCounter(sources.size());
         //counter.start();
 
@@ -30,10 +32,9 @@ public class MultiPathEdges {
         return edges;
     }
 
-    public IntSet compute(final GraphWithWeights<Double> g, final int s, final IntSet targets) {
-        final int n = g.graph.getNumberOfVertices();
+    public IntSet compute(final ReadOnlyGraph g, final int s, final IntSet targets) {
+        final int n = g.getNumberOfVertices();
 
-        final boolean[] settled = new boolean[n];
         final double[] dist = new double[n];
         final IntArrayList[] pred = new IntArrayList[n];
 
@@ -42,21 +43,16 @@ public class MultiPathEdges {
             pred[i] = null;
         }
 
-        Queue<Pair<Integer, Double>> Q = new PriorityQueue<>(Comparator.comparingDouble(o -> o.y));
+        final IndexedPriorityQueue Q = IndexedPriorityQueue.create(n);
 
         dist[s] = 0.0;
 
-        Q.add(new Pair<>(s, dist[s]));
+        Q.insert(s, dist[s]);
 
         int numTargets = targets.size();
 
         while (!Q.isEmpty()) {
-            final int v = Q.remove().x;
-
-            if (settled[v]) {
-                continue;
-            }
-            settled[v] = true;
+            final int v = Q.poll();
 
             if (targets.contains(v)) {
                 if (--numTargets == 0) {
@@ -66,23 +62,17 @@ public class MultiPathEdges {
 
             final double dV = dist[v];
 
-            for (int e: g.graph.getOutEdges(v)) {
-                final IntSet endpoints = g.graph.getVerticesAccessibleThrough(v, e);
-
-                if (endpoints.size() != 1) {
-                    throw new IllegalStateException("Only simple edges are allowed");
-                }
-
-                final int w = endpoints.iterator().nextInt();
-                final double potentialDistance = dV + g.weights.apply(e);
+            for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                final int w = g.getOutHead(i);
+                final double potentialDistance = dV + g.getOutWeight(i);
 
                 // Path discovery
                 if (dist[w] > potentialDistance) {
                     dist[w] = potentialDistance;
-                    Q.add(new Pair<>(w, potentialDistance));
+                    Q.insertOrDecrease(w, potentialDistance);
                     pred[w] = new IntArrayList();
                     pred[w].add(v);
-                } else if (dist[w] == potentialDistance && g.weights.apply(e) > 0.0) {
+                } else if (dist[w] == potentialDistance && g.getOutWeight(i) > 0.0) {
                     pred[w].add(v);
                 }
             }
@@ -97,18 +87,18 @@ public class MultiPathEdges {
         return edges;
     }
 
-    private void exploreEdges(final GraphWithWeights<Double> g, final IntArrayList[] pred, final int t, final IntSet edges) {
+    private void exploreEdges(final ReadOnlyGraph g, final IntArrayList[] pred, final int t, final IntSet edges) {
         int curr = t;
 
         while (pred[curr] != null && pred[curr].size() == 1) {
             final int u = pred[curr].getInt(0);
-            edges.add(g.graph.getSomeEdgeConnecting(u, curr));
+            edges.add(g.getSomeEdgeConnecting(u, curr));
             curr = u;
         }
 
         if (pred[curr] != null) {
             for (final int u: pred[curr]) {
-                edges.add(g.graph.getSomeEdgeConnecting(u, curr));
+                edges.add(g.getSomeEdgeConnecting(u, curr));
                 exploreEdges(g, pred, u, edges);
             }
         }
@@ -0,0 +1,208 @@
+package highways.algo.approximations;
+
+import highways.ReadOnlyGraph;
+import highways.algo.SourceKernel;
+import highways.algo.SourceScheduler;
+import highways.utils.DoubleArraySparseFunction;
+import highways.utils.IndexedDaryHeap;
+import highways.utils.Settings;
+import highways.utils.SparseFunction;
+
+import java.util.Arrays;
+
+// Adds batches of random sources until the top-k results are stable or the time budget is used up.
+// Every batch mean is one observation per result entry, their variance gives the standard error of the
+// estimate n * mean (batch means method, with the finite population correction for sampling without replacement).
+//
+// Stopping rule: the top-k set did not change for stableBatches batches and the confidence interval of each
+// top-k entry is within tolerance of its estimate. Before a batch is started, the deadline is checked against
+// the duration of the previous batch.
+public class ProgressiveSampling {
+    // Two-sided 95% confidence
+    private static final double Z = 1.96;
+
+    private final SourceKernel kernel;
+    private final int n;
+    private final int batchSize;
+    private final int topK;
+    private final double tolerance;
+    private final int stableBatches;
+    private final long deadlineMillis;
+    private final long seed;
+    private final SourceScheduler scheduler;
+
+    public ProgressiveSampling(
+            final SourceKernel kernel,
+            final int n,
+            final int batchSize,
+            final int topK,
+            final double tolerance,
+            final int stableBatches,
+            final long deadlineMillis,
+            final long seed,
+            final SourceScheduler scheduler
+    ) {
+        if (batchSize < 1 || topK < 1 || stableBatches < 1) {
+            throw new IllegalArgumentException("Batch size, top-k and stable batches have to be positive");
+        }
+
+        this.kernel = kernel;
+        this.n = n;
+        this.batchSize = batchSize;
+        this.topK = topK;
+        this.tolerance = tolerance;
+        this.stableBatches = stableBatches;
+        this.deadlineMillis = deadlineMillis;
+        this.seed = seed;
+        this.scheduler = scheduler;
+    }
+
+    public static ProgressiveSampling fromSettings(final SourceKernel kernel, final ReadOnlyGraph g) {
+        final int n = g.getNumberOfVertices();
+
+        return new ProgressiveSampling(
+                kernel,
+                n,
+                Settings.getInt("HIGHWAYS_BATCH_SIZE", Math.max(64, n / 100)),
+                Settings.getInt("HIGHWAYS_TOP_K", 100),
+                Settings.getDouble("HIGHWAYS_TOLERANCE", 0.05),
+                Settings.getInt("HIGHWAYS_STABLE_BATCHES", 3),
+                Settings.getLong("HIGHWAYS_DEADLINE", Long.MAX_VALUE / 1000) * 1000,
+                Sampling.seedFromSettings(),
+                SourceScheduler.fromSettings(g)
+        );
+    }
+
+    public SparseFunction<Integer, Double> compute() {
+        final int size = kernel.getResultSize();
+        final int k = Math.min(topK, size);
+        final int[] order = Sampling.sampleSources(n, n, seed);
+
+        final double[] sum = new double[size];
+        // Welford's running mean and squared deviations of the batch means
+        final double[] mean = new double[size];
+        final double[] m2 = new double[size];
+
+        boolean[] top = new boolean[size];
+        int unchanged = 0;
+        int batches = 0;
+        int sampled = 0;
+
+        final long start = System.currentTimeMillis();
+        long lastBatchMillis = 0;
+
+        scheduler.setReportProgress(false);
+
+        while (sampled < n) {
+            final long now = System.currentTimeMillis();
+
+            if (batches > 0 && now - start + lastBatchMillis > deadlineMillis) {
+                System.out.println("Deadline reached");
+                break;
+            }
+
+            final int end = Math.min(sampled + batchSize, n);
+            final int[] batch = new int[end - sampled];
+            System.arraycopy(order, sampled, batch, 0, batch.length);
+
+            final double[] values = scheduler.run(kernel, batch);
+            batches++;
+
+            for (int i = 0; i < size; i++) {
+                sum[i] += values[i];
+
+                final double x = values[i] / batch.length;
+                final double d = x - mean[i];
+                mean[i] += d / batches;
+                m2[i] += d * (x - mean[i]);
+            }
+
+            sampled = end;
+            lastBatchMillis = System.currentTimeMillis() - now;
+
+            final double scale = (double) n / sampled;
+            final boolean[] newTop = topEntries(sum, k);
+            unchanged = Arrays.equals(top, newTop) ? unchanged + 1 : 0;
+            top = newTop;
+
+            final double halfWidth = maxRelativeHalfWidth(sum, m2, top, batches, sampled, scale);
+
+            System.out.println(String.format(
+                    "%d sources in %d batches (%.1fs), top-%d unchanged for %d batches, relative half-width %f",
+                    sampled,
+                    batches,
+                    (System.currentTimeMillis() - start) / 1000.0,
+                    k,
+                    unchanged,
+                    halfWidth
+            ));
+
+            if (unchanged >= stableBatches && halfWidth <= tolerance) {
+                System.out.println("Top-" + k + " is stable");
+                break;
+            }
+        }
+
+        final double scale = (double) n / sampled;
+
+        for (int i = 0; i < size; i++) {
+            sum[i] *= scale;
+        }
+
+        return new DoubleArraySparseFunction(sum);
+    }
+
+    private static boolean[] topEntries(final double[] values, final int k) {
+        // Min-heap of the k largest values
+        final IndexedDaryHeap heap = new IndexedDaryHeap(4, values.length);
+
+        for (int i = 0; i < values.length; i++) {
+            if (heap.size() < k) {
+                heap.insert(i, values[i]);
+            } else if (values[i] > heap.peekKey()) {
+                heap.poll();
+                heap.insert(i, values[i]);
+            }
+        }
+
+        final boolean[] top = new boolean[values.length];
+
+        while (!heap.isEmpty()) {
+            top[heap.poll()] = true;
+        }
+
+        return top;
+    }
+
+    private double maxRelativeHalfWidth(
+            final double[] sum,
+            final double[] m2,
+            final boolean[] top,
+            final int batches,
+            final int sampled,
+            final double scale
+    ) {
+        if (batches < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        // All sources sampled: the estimate is exact
+        final double correction = n > 1 ? Math.sqrt((double) (n - sampled) / (n - 1)) : 0.0;
+        double max = 0.0;
+
+        for (int i = 0; i < top.length; i++) {
+            if (top[i]) {
+                final double estimate = sum[i] * scale;
+                final double standardError = n * Math.sqrt(m2[i] / (batches - 1) / batches) * correction;
+
+                if (estimate > 0.0) {
+                    max = Math.max(max, Z * standardError / estimate);
+                } else if (standardError > 0.0) {
+                    max = Double.POSITIVE_INFINITY;
+                }
+            }
+        }
+
+        return max;
+    }
+}
@@ -0,0 +1,105 @@
+package highways.algo.approximations;
+
+import highways.ReadOnlyGraph;
+import highways.algo.HighwaynessLength;
+import highways.algo.ShortestPathDag;
+import highways.algo.SourceKernel;
+import highways.utils.Accumulator;
+import highways.utils.DoubleSparseFunction;
+
+import java.util.Random;
+
+// Riondato-Kornaropoulos style estimator: every sample is a vertex pair (s, t) and one shortest s-t path
+// picked uniformly at random. The kernel's "sources" are sample indices.
+//
+// Edge betweenness adds 1 to every edge of the path. The exact highwayness sweep adds 1 / length(s, t) to
+// an edge (v, w) once per shortest path from w to t, which the path contains with probability
+// sigma(s, v) * paths(w, t) / sigma(s, t). So (v, w) gets sigma(s, t) / (sigma(s, v) * length(s, t)).
+// Scaling the sums by n (n - 1) / samples gives unbiased estimates of the all-pairs values.
+public class SampledPairs implements SourceKernel {
+    public enum Metric {
+        EDGE_BETWEENNESS,
+        HIGHWAYNESS_LENGTH
+    }
+
+    private final ReadOnlyGraph g;
+    private final Metric metric;
+    // Highwayness length counts edges, null for edge betweenness
+    private final DoubleSparseFunction lengths;
+    private final int[] sources;
+    private final int[] targets;
+    private final long[] seeds;
+    private final ThreadLocal<ShortestPathDag> workspace;
+
+    public SampledPairs(final ReadOnlyGraph g, final Metric metric, final int samples, final long seed) {
+        final int n = g.getNumberOfVertices();
+
+        if (n < 2) {
+            throw new IllegalArgumentException("Need at least two vertices to sample pairs");
+        }
+
+        this.g = g;
+        this.metric = metric;
+        this.lengths = metric == Metric.HIGHWAYNESS_LENGTH ? HighwaynessLength.uniform(g.getNumberOfEdges()) : null;
+        this.workspace = ThreadLocal.withInitial(() -> new ShortestPathDag(g));
+
+        // Pairs are drawn up front so the estimate does not depend on the thread schedule
+        final Random random = new Random(seed);
+
+        sources = new int[samples];
+        targets = new int[samples];
+        seeds = new long[samples];
+
+        for (int i = 0; i < samples; i++) {
+            sources[i] = random.nextInt(n);
+            targets[i] = random.nextInt(n - 1);
+
+            if (targets[i] >= sources[i]) {
+                targets[i]++;
+            }
+
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    public int getNumberOfSamples() {
+        return sources.length;
+    }
+
+    @Override
+    public int getResultSize() {
+        return g.getNumberOfEdges();
+    }
+
+    @Override
+    public void accumulate(final Accumulator result, final int i) {
+        final int s = sources[i];
+        final int t = targets[i];
+
+        final ShortestPathDag dag = workspace.get();
+        dag.compute(g, s, lengths, t);
+
+        // t is not reachable from s
+        if (dag.sigma[t] == 0.0) {
+            return;
+        }
+
+        final double pathValue = metric == Metric.HIGHWAYNESS_LENGTH ? dag.sigma[t] / dag.totalDistance[t] : 1.0;
+        final Random random = new Random(seeds[i]);
+
+        // Walk back from t, picking every predecessor with probability sigma(v) / sigma(w)
+        for (int w = t; w != s; ) {
+            double r = random.nextDouble() * dag.sigma[w];
+            int link = dag.predFirst[w];
+
+            while (dag.predNext[link] != -1 && r >= dag.sigma[dag.predVertex[link]]) {
+                r -= dag.sigma[dag.predVertex[link]];
+                link = dag.predNext[link];
+            }
+
+            w = dag.predVertex[link];
+
+            result.add(dag.predEdge[link], metric == Metric.HIGHWAYNESS_LENGTH ? pathValue / dag.sigma[w] : pathValue);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package highways.algo.approximations;
+
+import highways.ReadOnlyGraph;
+import highways.algo.ShortestPathDag;
+import highways.algo.SourceKernel;
+import highways.algo.SourceScheduler;
+import highways.utils.DoubleArraySparseFunction;
+import highways.utils.Settings;
+import highways.utils.SparseFunction;
+
+import java.util.Random;
+
+// Estimates of all-sources kernels from sampled sources (Brandes-Pich) or sampled vertex pairs
+// (Riondato-Kornaropoulos). The error bounds hold for edge betweenness normalized by n (n - 1),
+// for highwayness the estimates are unbiased but the per-pair values are not bounded by 1.
+public class Sampling {
+    // Hoeffding with a union bound over all edges
+    public static int sourceSampleSize(final int m, final double epsilon, final double delta) {
+        checkBounds(epsilon, delta);
+
+        return (int) Math.ceil(Math.log(2.0 * m / delta) / (2.0 * epsilon * epsilon));
+    }
+
+    // Riondato-Kornaropoulos with the universal constant c = 0.5
+    public static int pairSampleSize(final int vertexDiameter, final double epsilon, final double delta) {
+        checkBounds(epsilon, delta);
+
+        final double log2 = vertexDiameter > 2 ? Math.floor(Math.log(vertexDiameter - 2) / Math.log(2.0)) : 0.0;
+
+        return (int) Math.ceil(0.5 / (epsilon * epsilon) * (log2 + 1.0 + Math.log(1.0 / delta)));
+    }
+
+    private static void checkBounds(final double epsilon, final double delta) {
+        if (!(epsilon > 0.0 && epsilon < 1.0) || !(delta > 0.0 && delta < 1.0)) {
+            throw new IllegalArgumentException("Epsilon and delta have to be in (0, 1)");
+        }
+    }
+
+    // Two times the most vertices on a shortest path from vertex 0, plus one.
+    // That bounds the vertex diameter of undirected unweighted graphs, otherwise it is an estimate.
+    public static int estimateVertexDiameter(final ReadOnlyGraph g) {
+        final int n = g.getNumberOfVertices();
+        final ShortestPathDag dag = new ShortestPathDag(g);
+        dag.compute(g, 0, null);
+
+        final int[] hops = new int[n];
+        int maxHops = 0;
+
+        for (int k = 0; k < dag.size; k++) {
+            final int w = dag.order[k];
+
+            for (int l = dag.predFirst[w]; l != -1; l = dag.predNext[l]) {
+                hops[w] = Math.max(hops[w], hops[dag.predVertex[l]] + 1);
+            }
+
+            maxHops = Math.max(maxHops, hops[w]);
+        }
+
+        return (int) Math.min(n, 2L * maxHops + 1);
+    }
+
+    // k distinct vertices by a partial Fisher-Yates shuffle
+    public static int[] sampleSources(final int n, final int k, final long seed) {
+        final int[] vertices = new int[n];
+
+        for (int v = 0; v < n; v++) {
+            vertices[v] = v;
+        }
+
+        final Random random = new Random(seed);
+
+        for (int i = 0; i < k; i++) {
+            final int j = i + random.nextInt(n - i);
+            final int tmp = vertices[i];
+            vertices[i] = vertices[j];
+            vertices[j] = tmp;
+        }
+
+        final int[] sources = new int[k];
+        System.arraycopy(vertices, 0, sources, 0, k);
+
+        return sources;
+    }
+
+    public static SparseFunction<Integer, Double> estimateBySources(
+            final SourceKernel kernel,
+            final int n,
+            final int samples,
+            final long seed,
+            final SourceScheduler scheduler
+    ) {
+        final int k = Math.min(samples, n);
+
+        if (k < 1) {
+            throw new IllegalArgumentException("Need at least one sample");
+        }
+
+        System.out.println(String.format("Sample %d of %d sources", k, n));
+
+        final double[] values = scheduler.run(kernel, sampleSources(n, k, seed));
+        final double scale = (double) n / k;
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] *= scale;
+        }
+
+        return new DoubleArraySparseFunction(values);
+    }
+
+    public static SparseFunction<Integer, Double> estimateByPairs(
+            final ReadOnlyGraph g,
+            final SampledPairs.Metric metric,
+            final int samples,
+            final long seed,
+            final SourceScheduler scheduler
+    ) {
+        if (samples < 1) {
+            throw new IllegalArgumentException("Need at least one sample");
+        }
+
+        final long n = g.getNumberOfVertices();
+
+        System.out.println(String.format("Sample %d vertex pairs", samples));
+
+        final double[] values = scheduler.run(new SampledPairs(g, metric, samples, seed), samples);
+        final double scale = (double) (n * (n - 1)) / samples;
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] *= scale;
+        }
+
+        return new DoubleArraySparseFunction(values);
+    }
+
+    // HIGHWAYS_SAMPLES if set, otherwise the size for HIGHWAYS_EPSILON and HIGHWAYS_DELTA
+    public static int sourceSampleSizeFromSettings(final ReadOnlyGraph g) {
+        final int samples = Settings.getInt("HIGHWAYS_SAMPLES", 0);
+
+        return samples > 0 ? samples : sourceSampleSize(
+                g.getNumberOfEdges(),
+                Settings.getDouble("HIGHWAYS_EPSILON", 0.01),
+                Settings.getDouble("HIGHWAYS_DELTA", 0.1)
+        );
+    }
+
+    public static int pairSampleSizeFromSettings(final ReadOnlyGraph g) {
+        final int samples = Settings.getInt("HIGHWAYS_SAMPLES", 0);
+
+        return samples > 0 ? samples : pairSampleSize(
+                estimateVertexDiameter(g),
+                Settings.getDouble("HIGHWAYS_EPSILON", 0.01),
+                Settings.getDouble("HIGHWAYS_DELTA", 0.1)
+        );
+    }
+
+    public static long seedFromSettings() {
+        return Settings.getLong("HIGHWAYS_SEED", 1235423743L);
+    }
+}
@@ -1,7 +1,7 @@
 package highways.generators;
 
 import highways.GraphWithWeights;
-import highways.utils.MapSparseFunction;
+import highways.utils.DoubleMapSparseFunction;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntSet;
 
@@ -33,7 +33,7 @@ public class TriangleWeightGenerator {
 
         return new GraphWithWeights<>(
                 original.graph,
-                new MapSparseFunction<>(triangleCounts)
+                new DoubleMapSparseFunction(triangleCounts)
         );
     }
 }
@@ -5,8 +5,10 @@ import highways.FixedGrph;
 import highways.GraphWithWeights;
 import highways.Mappings;
 import highways.utils.DoubleArraySparseFunction;
-import highways.utils.MapSparseFunction;
+import highways.utils.DoubleMapSparseFunction;
+import highways.utils.FixedPoint;
 import highways.utils.Pair;
+import highways.utils.Shard;
 import highways.utils.SparseFunction;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
@@ -17,6 +19,7 @@ import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 public class EdgeFileLoader {
@@ -24,6 +27,7 @@ public class EdgeFileLoader {
         final Grph g = new FixedGrph();
         final Long2IntMap nodeMap = new Long2IntOpenHashMap();
         final Int2IntMap edgeMap = new Int2IntOpenHashMap();
+        final FixedPoint fixedPoint = FixedPoint.fromSettings();
 
         ArrayList<Double> w = new ArrayList<>();
 
@@ -49,7 +53,7 @@ public class EdgeFileLoader {
 
                 assert e == w.size();
 
-                w.add(distance);
+                w.add(fixedPoint == null ? distance : fixedPoint.quantize(distance));
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -129,7 +133,7 @@ public class EdgeFileLoader {
             e.printStackTrace();
         }
 
-        return new MapSparseFunction<>(w, defaultValue);
+        return new DoubleMapSparseFunction(w, defaultValue);
     }
 
     public static void storeEdgeWeights(
@@ -152,6 +156,89 @@ public class EdgeFileLoader {
         }
     }
 
+    public static void storeVertexWeights(
+            final String vertexListFile,
+            final Iterable<Pair<Long, Double>> vertices
+    ) {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(vertexListFile))) {
+
+            for (final Pair<Long, Double> vertex: vertices) {
+                bw.write(String.format(
+                        Locale.ROOT,
+                        "%d %f\n",
+                        vertex.x,
+                        vertex.y
+                ));
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Second version, with the run after the shard index
+    private static final int SHARD_MAGIC = 0x48575349;
+
+    // Raw partial sums of one shard, binary to keep full precision. run identifies graph and kernel configuration.
+    public static void storeShardEdgeWeights(
+            final String tableName,
+            final Shard shard,
+            final String run,
+            final Iterable<Pair<Integer, Double>> edges
+    ) {
+        final List<Pair<Integer, Double>> list = new ArrayList<>();
+        edges.forEach(list::add);
+
+        final String file = shard.fileName(tableName);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(SHARD_MAGIC);
+            out.writeUTF(tableName);
+            out.writeInt(shard.index);
+            out.writeInt(shard.count);
+            out.writeUTF(run);
+            out.writeInt(list.size());
+
+            for (final Pair<Integer, Double> edge: list) {
+                out.writeInt(edge.x);
+                out.writeDouble(edge.y);
+            }
+        } catch (IOException e) {
+            // A lost shard has to fail its own process, not only the merge
+            throw new IllegalStateException("Cannot write shard file " + file, e);
+        }
+    }
+
+    // Adds the partial sums to sum and returns the run of the shard
+    public static String loadShardEdgeWeights(
+            final String tableName,
+            final Shard shard,
+            final Int2DoubleMap sum
+    ) {
+        final String file = shard.fileName(tableName);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != SHARD_MAGIC
+                    || !in.readUTF().equals(tableName)
+                    || in.readInt() != shard.index
+                    || in.readInt() != shard.count) {
+                throw new IllegalStateException("Shard file " + file + " does not belong to this run");
+            }
+
+            final String run = in.readUTF();
+            final int entries = in.readInt();
+
+            for (int i = 0; i < entries; i++) {
+                final int edge = in.readInt();
+                sum.put(edge, sum.get(edge) + in.readDouble());
+            }
+
+            return run;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read shard file " + file, e);
+        }
+    }
+
     public static void storeDirectedGraph(
             final String edgeListFile,
             final GraphWithWeights<Double> g
@@ -5,6 +5,7 @@ import highways.FixedGrph;
 import highways.GraphWithWeights;
 import highways.Mappings;
 import highways.utils.DoubleArraySparseFunction;
+import highways.utils.FixedPoint;
 import highways.utils.Pair;
 import highways.utils.SparseFunction;
 import it.unimi.dsi.fastutil.ints.Int2IntMap;
@@ -35,6 +36,8 @@ public class PostgresLoader {
 
         final Long2IntMap nodeMapping = new Long2IntOpenHashMap();
         final Int2IntMap edgeMapping = new Int2IntOpenHashMap();
+        // Only the first column is used for shortest paths and gets quantized, the others are kept as they are
+        final FixedPoint fixedPoint = FixedPoint.fromSettings();
 
         try {
             final Statement stmt = connection.createStatement();
@@ -87,7 +90,9 @@ public class PostgresLoader {
                 edgeMapping.put(edge, g.addSimpleEdge(sourceId, targetId, directed));
 
                 for (int i = 0; i < weightColumns.length; i++) {
-                    w[i].add(rs.getDouble(5 + i));
+                    final double weight = rs.getDouble(5 + i);
+
+                    w[i].add(i == 0 && fixedPoint != null ? fixedPoint.quantize(weight) : weight);
                 }
             }
         } catch (SQLException e) {
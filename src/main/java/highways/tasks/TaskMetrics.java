@@ -0,0 +1,73 @@
+package highways.tasks;
+
+import highways.AbstractDataDriver;
+import highways.GraphWithWeights;
+import highways.Mappings;
+import highways.PostgresDataDriver;
+import highways.algo.MultiMetricKernel.Metric;
+import highways.loaders.EdgeFileLoader;
+import highways.loaders.PostgresLoader;
+import highways.utils.GraphUtils;
+import highways.utils.Pair;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+
+public class TaskMetrics {
+
+    @SuppressWarnings("unchecked")
+    public static void run(
+            final AbstractDataDriver driver,
+            final String network,
+            final String weightColumn
+    ) {
+        final Set<Metric> metrics = Metric.fromSettings();
+        final Pair<GraphWithWeights<Double>[], Mappings> gws;
+
+        if (metrics.contains(Metric.PHD)) {
+            gws = driver.loadGraphWithDistance(network, weightColumn, "km");
+        } else {
+            final Pair<GraphWithWeights<Double>, Mappings> p = driver.loadGraph(network, weightColumn);
+            gws = new Pair<>(new GraphWithWeights[]{p.x}, p.y);
+        }
+
+        final Pair<Map<Metric, Iterable<Pair<Integer, Double>>>, Map<Metric, Iterable<Pair<Long, Double>>>> results =
+                GraphUtils.runMetrics(metrics, gws);
+
+        System.out.println("Store results");
+
+        for (final Map.Entry<Metric, Iterable<Pair<Integer, Double>>> entry: results.x.entrySet()) {
+            final String tableName = network + "_" + entry.getKey().label + "_" + weightColumn;
+            final String outFile = "results/" + tableName + ".wedge";
+
+            System.out.println("To file " + outFile);
+            EdgeFileLoader.storeEdgeWeights(outFile, entry.getValue());
+
+            // Like the single algorithms, edge metrics also go to a table of the same name
+            if (driver instanceof PostgresDataDriver) {
+                System.out.println("To DB " + tableName);
+
+                try {
+                    final Connection c = ((PostgresDataDriver) driver).getConnection();
+                    PostgresLoader.storeEdgeWeights(c, tableName, entry.getValue());
+                    c.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        // There are no vertex weight tables, vertex metrics are only written to files
+
+        for (final Map.Entry<Metric, Iterable<Pair<Long, Double>>> entry: results.y.entrySet()) {
+            final String outFile = "results/" + network + "_" + entry.getKey().label + "_" + weightColumn + ".wvertex";
+
+            System.out.println("To file " + outFile);
+            EdgeFileLoader.storeVertexWeights(outFile, entry.getValue());
+        }
+
+        System.out.println("Done");
+    }
+}
@@ -0,0 +1,6 @@
+package highways.utils;
+
+// Target of per-source contributions, indexed by vertex or edge
+public interface Accumulator {
+    void add(final int index, final double value);
+}
@@ -0,0 +1,33 @@
+package highways.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Accumulator shared by all threads, memory does not grow with the number of threads
+public class AtomicAccumulator implements Accumulator {
+    private final AtomicLongArray values;
+
+    public AtomicAccumulator(final int size) {
+        values = new AtomicLongArray(size);
+    }
+
+    @Override
+    public void add(final int index, final double value) {
+        long current;
+        long updated;
+
+        do {
+            current = values.get(index);
+            updated = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + value);
+        } while (!values.compareAndSet(index, current, updated));
+    }
+
+    public double[] toArray() {
+        final double[] array = new double[values.length()];
+
+        for (int i = 0; i < array.length; i++) {
+            array[i] = Double.longBitsToDouble(values.get(i));
+        }
+
+        return array;
+    }
+}
@@ -0,0 +1,21 @@
+package highways.utils;
+
+// Accumulator confined to one thread
+public class DenseAccumulator implements Accumulator {
+    public final double[] values;
+
+    public DenseAccumulator(final int size) {
+        values = new double[size];
+    }
+
+    @Override
+    public void add(final int index, final double value) {
+        values[index] += value;
+    }
+
+    public void addAll(final DenseAccumulator other) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] += other.values[i];
+        }
+    }
+}
@@ -4,7 +4,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.stream.IntStream;
 
-public class DoubleArraySparseFunction implements SparseFunction<Integer, Double> {
+public class DoubleArraySparseFunction implements DoubleSparseFunction {
     private final double[] array;
     private final double defaultValue;
     private final boolean hasDefault;
@@ -23,6 +23,11 @@ public class DoubleArraySparseFunction implements SparseFunction<Integer, Double
 
     @Override
     public Double apply(Integer index) {
+        return applyAsDouble(index);
+    }
+
+    @Override
+    public double applyAsDouble(final int index) {
         if (hasDefault) {
             if (index >= 0 && index < array.length) {
                 return array[index];
@@ -34,6 +39,13 @@ public class DoubleArraySparseFunction implements SparseFunction<Integer, Double
         return array[index];
     }
 
+    @Override
+    public void forEachPair(final IntDoubleConsumer action) {
+        for (int i = 0; i < array.length; i++) {
+            action.accept(i, array[i]);
+        }
+    }
+
     @Override
     public Iterable<Integer> sparse() {
         return () -> IntStream.range(0, array.length).iterator();
@@ -0,0 +1,77 @@
+package highways.utils;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+
+import java.util.Iterator;
+
+public class DoubleMapSparseFunction implements DoubleSparseFunction {
+    private final Int2DoubleMap map;
+    private final boolean hasDefault;
+
+    public DoubleMapSparseFunction(final Int2DoubleMap map) {
+        this.map = map;
+        this.hasDefault = false;
+    }
+
+    public DoubleMapSparseFunction(final Int2DoubleMap map, final double defaultValue) {
+        this.map = map;
+        this.map.defaultReturnValue(defaultValue);
+        this.hasDefault = true;
+    }
+
+    @Override
+    public Double apply(Integer index) {
+        // Like MapSparseFunction, missing keys map to null if there is no default
+        if (!hasDefault && !map.containsKey(index.intValue())) {
+            return null;
+        }
+
+        return map.get(index.intValue());
+    }
+
+    @Override
+    public double applyAsDouble(final int index) {
+        // A missing key must not become a zero weight
+        if (!hasDefault && !map.containsKey(index)) {
+            throw new IllegalArgumentException("Function has no value for " + index);
+        }
+
+        return map.get(index);
+    }
+
+    @Override
+    public void forEachPair(final IntDoubleConsumer action) {
+        for (final Int2DoubleMap.Entry entry: map.int2DoubleEntrySet()) {
+            action.accept(entry.getIntKey(), entry.getDoubleValue());
+        }
+    }
+
+    @Override
+    public Iterable<Integer> sparse() {
+        return map.keySet();
+    }
+
+    @Override
+    public Iterable<Double> sparseApplied() {
+        return map.values();
+    }
+
+    @Override
+    public Iterable<Pair<Integer, Double>> sparsePair() {
+        return () -> new Iterator<>() {
+            final Iterator<Int2DoubleMap.Entry> entries = map.int2DoubleEntrySet().iterator();
+
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Pair<Integer, Double> next() {
+                final Int2DoubleMap.Entry entry = entries.next();
+
+                return new Pair<>(entry.getIntKey(), entry.getDoubleValue());
+            }
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package highways.utils;
+
+import java.util.function.IntToDoubleFunction;
+
+// Primitive specialization of SparseFunction<Integer, Double> for the hot paths,
+// applyAsDouble and forEachPair neither box the index nor the value.
+public interface DoubleSparseFunction extends SparseFunction<Integer, Double>, IntToDoubleFunction {
+    @Override
+    double applyAsDouble(final int index);
+
+    void forEachPair(final IntDoubleConsumer action);
+
+    static DoubleSparseFunction of(final SparseFunction<Integer, ? extends Number> f, final int size) {
+        if (f instanceof DoubleSparseFunction) {
+            return (DoubleSparseFunction) f;
+        }
+
+        final double[] array = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            final Number value = f.apply(i);
+
+            if (value == null) {
+                throw new IllegalArgumentException("Function has no value for " + i);
+            }
+
+            array[i] = value.doubleValue();
+        }
+
+        return new DoubleArraySparseFunction(array, Double.POSITIVE_INFINITY);
+    }
+}
@@ -0,0 +1,49 @@
+package highways.utils;
+
+// Weights as integer multiples of a resolution, e.g. 0.001 for millimeters if the cost is given in meters.
+// Sums of units are exact, so equally long shortest paths compare equal.
+public class FixedPoint {
+    public final double resolution;
+
+    public FixedPoint(final double resolution) {
+        if (!(resolution > 0.0) || Double.isInfinite(resolution)) {
+            throw new IllegalArgumentException("Resolution has to be positive");
+        }
+
+        this.resolution = resolution;
+    }
+
+    public int toUnits(final double weight) {
+        final double units = Math.rint(weight / resolution);
+
+        if (!(units >= 0.0 && units <= Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException(String.format(
+                    "Weight %f cannot be represented in units of %f", weight, resolution
+            ));
+        }
+
+        // Zero-weight arcs would turn paths of different length into ties
+        if (units == 0.0 && weight > 0.0) {
+            throw new IllegalArgumentException(String.format(
+                    "Positive weight %s rounds to 0 units of %s, use a smaller HIGHWAYS_RESOLUTION", weight, resolution
+            ));
+        }
+
+        return (int) units;
+    }
+
+    public double toWeight(final long units) {
+        return units * resolution;
+    }
+
+    public double quantize(final double weight) {
+        return toWeight(toUnits(weight));
+    }
+
+    // Null if weights are kept as doubles
+    public static FixedPoint fromSettings() {
+        final String resolution = Settings.get("HIGHWAYS_RESOLUTION", null);
+
+        return resolution == null ? null : new FixedPoint(Double.parseDouble(resolution));
+    }
+}
@@ -1,18 +1,43 @@
 package highways.utils;
 
 import grph.Grph;
+import highways.CsrGraph;
 import highways.GraphWithWeights;
 import highways.Mappings;
+import highways.ReadOnlyGraph;
+import highways.algo.BlockDecomposition;
+import highways.algo.BlockEdgeBetweenness;
+import highways.algo.ChainCompression;
+import highways.algo.CheckpointedRun;
 import highways.algo.EdgeBetweennessCentrality;
+import highways.algo.FoldedEdgeBetweenness;
+import highways.algo.FoldedHighwaynessLength;
 import highways.algo.HighwaynessLength;
+import highways.algo.MultiMetricKernel;
+import highways.algo.MultiMetricKernel.Metric;
 import highways.algo.ProportionateHighwaynessDistance;
+import highways.algo.SourceKernel;
+import highways.algo.SourceScheduler;
+import highways.algo.StructuralTwins;
+import highways.algo.SymmetricPairs;
+import highways.algo.TreeFolding;
+import highways.algo.TwinKernel;
 import highways.algo.approximations.HwdPartitions;
+import highways.algo.approximations.ProgressiveSampling;
+import highways.algo.approximations.SampledPairs;
+import highways.algo.approximations.Sampling;
 import highways.generators.TriangleWeightGenerator;
 import it.unimi.dsi.fastutil.ints.Int2IntMap;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import toools.collections.primitive.LucIntSet;
 
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
 public class GraphUtils {
     public static IntSet getNonLargestCC(final Grph graph) {
         final IntSet ccVertices = graph.getLargestConnectedComponent();
@@ -50,9 +75,12 @@ public class GraphUtils {
         return simplified;
     }
 
-    public static Iterable<Pair<Integer, Double>> runAlgorithm(final String algorithm, Pair<GraphWithWeights<Double>, Mappings> p) {
+    // Edge results by edge id and, for a run of HIGHWAYS_SHARD, the run of the shard file (null otherwise)
+    public static Pair<Iterable<Pair<Integer, Double>>, String> runAlgorithm(final String algorithm, Pair<GraphWithWeights<Double>, Mappings> p) {
+        checkShardable(algorithm);
+
         final Pair<GraphWithWeights<Double>, Mappings> simplified = GraphUtils.preprocess(p);
-        final SparseFunction<Integer, Double> result;
+        final Pair<SparseFunction<Integer, Double>, String> result;
 
         final MultiStopWatch watch = new MultiStopWatch();
 
@@ -62,36 +90,139 @@ public class GraphUtils {
 
         switch (algorithm) {
             case "edge_betweenness": {
-                result = new EdgeBetweennessCentrality(simplified.x.graph, simplified.x.weights).computeParallel();
+                final CsrGraph g = CsrGraph.fromGraph(simplified.x);
+                final TreeFolding folding = foldTrees(g);
+
+                if (folding == null) {
+                    final SymmetricPairs pairs = symmetricPairs(g);
+                    final SourceKernel kernel = pairs == null
+                            ? mergeTwins(new EdgeBetweennessCentrality(g, compressChains(g)), g, null)
+                            : new EdgeBetweennessCentrality(g, null, pairs);
+                    result = runAllSources(algorithm, kernel, g, g, null);
+                } else {
+                    if (Settings.getBoolean("HIGHWAYS_SYMMETRIC", false)) {
+                        System.out.println("HIGHWAYS_SYMMETRIC is skipped because dead-end trees are folded, "
+                                + "set HIGHWAYS_FOLD_TREES=no to use it");
+                    }
+
+                    final ChainCompression chains = compressChains(folding.core);
+                    result = runAllSources(algorithm, new FoldedEdgeBetweenness(folding, chains), folding.core, g, null);
+                }
                 break;
             }
             case "highwayness_length": {
-                result = new HighwaynessLength(
-                        simplified.x.graph,
-                        simplified.x.weights
-                ).computeParallel();
+                final CsrGraph g = CsrGraph.fromGraph(simplified.x);
+                final TreeFolding folding = foldTrees(g);
+
+                if (folding == null) {
+                    final SourceKernel kernel = new HighwaynessLength(g, compressChains(g));
+                    result = runAllSources(algorithm, mergeTwins(kernel, g, null), g, g, null);
+                } else {
+                    final ChainCompression chains = compressChains(folding.core);
+                    result = runAllSources(algorithm, new FoldedHighwaynessLength(folding, chains), folding.core, g, null);
+                }
+                break;
+            }
+            case "edge_betweenness_blocks": {
+                final CsrGraph g = CsrGraph.fromGraph(simplified.x);
+                final BlockDecomposition blocks = new BlockDecomposition(g);
+
+                if (blocks.isStronglyConnected()) {
+                    System.out.println(String.format(
+                            "%d blocks, largest with %d vertices",
+                            blocks.numBlocks,
+                            blocks.getLargestBlock()
+                    ));
+
+                    result = runAllSources(
+                            algorithm,
+                            new BlockEdgeBetweenness(blocks),
+                            blocks.getNumberOfSources(),
+                            new SourceScheduler(),
+                            g,
+                            null
+                    );
+                } else {
+                    System.out.println("Graph is not strongly connected, running edge_betweenness without blocks");
+                    final SourceKernel kernel = new EdgeBetweennessCentrality(g, compressChains(g));
+                    result = runAllSources(algorithm, mergeTwins(kernel, g, null), g, g, null);
+                }
+                break;
+            }
+            case "approx_ebtw_sampled_sources": {
+                final CsrGraph g = CsrGraph.fromGraph(simplified.x);
+                result = unsharded(Sampling.estimateBySources(
+                        new EdgeBetweennessCentrality(g),
+                        g.getNumberOfVertices(),
+                        Sampling.sourceSampleSizeFromSettings(g),
+                        Sampling.seedFromSettings(),
+                        SourceScheduler.fromSettings(g)
+                ));
+                break;
+            }
+            case "approx_hl_sampled_sources": {
+                final CsrGraph g = CsrGraph.fromGraph(simplified.x);
+                result = unsharded(Sampling.estimateBySources(
+                        new HighwaynessLength(g),
+                        g.getNumberOfVertices(),
+                        Sampling.sourceSampleSizeFromSettings(g),
+                        Sampling.seedFromSettings(),
+                        SourceScheduler.fromSettings(g)
+                ));
+                break;
+            }
+            case "approx_ebtw_sampled_pairs": {
+                final CsrGraph g = CsrGraph.fromGraph(simplified.x);
+                result = unsharded(Sampling.estimateByPairs(
+                        g,
+                        SampledPairs.Metric.EDGE_BETWEENNESS,
+                        Sampling.pairSampleSizeFromSettings(g),
+                        Sampling.seedFromSettings(),
+                        SourceScheduler.fromSettings(g)
+                ));
+                break;
+            }
+            case "approx_hl_sampled_pairs": {
+                final CsrGraph g = CsrGraph.fromGraph(simplified.x);
+                result = unsharded(Sampling.estimateByPairs(
+                        g,
+                        SampledPairs.Metric.HIGHWAYNESS_LENGTH,
+                        Sampling.pairSampleSizeFromSettings(g),
+                        Sampling.seedFromSettings(),
+                        SourceScheduler.fromSettings(g)
+                ));
+                break;
+            }
+            case "approx_ebtw_progressive": {
+                final CsrGraph g = CsrGraph.fromGraph(simplified.x);
+                result = unsharded(ProgressiveSampling.fromSettings(new EdgeBetweennessCentrality(g), g).compute());
+                break;
+            }
+            case "approx_hl_progressive": {
+                final CsrGraph g = CsrGraph.fromGraph(simplified.x);
+                result = unsharded(ProgressiveSampling.fromSettings(new HighwaynessLength(g), g).compute());
                 break;
             }
             case "approx_ebtw_partitions": {
-                result = new HwdPartitions(
+                result = unsharded(new HwdPartitions(
                         simplified.x
-                ).computeEbtwParallel();
+                ).computeEbtwParallel());
                 break;
             }
             case "approx_hpr_partitions": {
-                result = new HwdPartitions(
+                result = unsharded(new HwdPartitions(
                         simplified.x
-                ).computeHprParallel();
+                ).computeHprParallel());
                 break;
             }
             case "approx_partitions_skeleton": {
-                result = new HwdPartitions(
+                result = unsharded(new HwdPartitions(
                         simplified.x
-                ).computeSkeleton();
+                ).computeSkeleton());
                 break;
             }
             case "generate_triangle_weights": {
-                result = TriangleWeightGenerator.generate(simplified.x).weights;
+                result = unsharded(TriangleWeightGenerator.generate(simplified.x).weights);
                 break;
             }
             default:
@@ -103,62 +234,211 @@ public class GraphUtils {
 
         final int[] reverseMapping = simplified.y.edgeReverseMapping();
         final LucIntSet edges = simplified.x.graph.getEdges();
+        final SparseFunction<Integer, Double> values = result.x;
 
-        return () -> edges.stream()
-                .filter(e -> result.apply(e) != null)
-                .map(e -> new Pair<>(reverseMapping[e], result.apply(e)))
-                .iterator();
+        return new Pair<>(() -> edges.stream()
+                .filter(e -> values.apply(e) != null)
+                .map(e -> new Pair<>(reverseMapping[e], values.apply(e)))
+                .iterator(), result.y);
     }
 
-    public static Iterable<Pair<Integer, Double>> runTwoWeightAlgorithm(final String algorithm, final Pair<GraphWithWeights<Double>[], Mappings> gws) {
-        if (gws.x.length != 2) {
-            throw new IllegalArgumentException("Can only take weight/distance pairs");
+    // Result of an algorithm that cannot be sharded
+    private static Pair<SparseFunction<Integer, Double>, String> unsharded(final SparseFunction<Integer, Double> result) {
+        return new Pair<>(result, null);
+    }
+
+    // Only the sums over all sources can be split into source ranges
+    private static void checkShardable(final String algorithm) {
+        if (Shard.fromSettings() != null
+                && !algorithm.equals("edge_betweenness")
+                && !algorithm.equals("edge_betweenness_blocks")
+                && !algorithm.equals("highwayness_length")
+                && !algorithm.equals("phd")) {
+            throw new IllegalArgumentException("Only edge_betweenness, edge_betweenness_blocks, highwayness_length and phd can be sharded");
         }
+    }
 
-        if (gws.x[0].graph != gws.x[1].graph) {
-            throw new IllegalArgumentException("Graphs are not the same instance");
+    // Dead-end trees are folded unless disabled or the multi-source search is used, which only runs unfolded.
+    // Folded searches start at the root, so double weights sum in a different order and may find other ties.
+    // Only exact weights are folded by default.
+    private static TreeFolding foldTrees(final CsrGraph g) {
+        final boolean exact = g.getFixedPoint() != null || g.hasUniformWeights();
+
+        if (!Settings.getBoolean("HIGHWAYS_FOLD_TREES", exact)
+                || (g.hasUniformWeights() && Settings.getBoolean("HIGHWAYS_MULTI_SOURCE_BFS", false))) {
+            return null;
         }
 
-        GraphWithWeights<Double> g = gws.x[0];
-        Pair<GraphWithWeights<Double>, Mappings> simplified = preprocess(new Pair<>(g, gws.y));
+        final TreeFolding folding = new TreeFolding(g);
 
-        // Re-map distance labels after simplification
+        System.out.println(String.format(
+                "Folded %d of %d vertices into dead-end trees",
+                folding.getNumberOfFolded(),
+                g.getNumberOfVertices()
+        ));
 
-        final double[] distanceRemap = new double[simplified.y.edgeMapping.size()];
+        return folding;
+    }
 
-        {
-            // new index to id
-            int[] newReverseEdgeMapping = simplified.y.edgeReverseMapping();
-            // id to old index
-            Int2IntMap oldEdgeMapping = gws.y.edgeMapping;
+    // Chains of degree-2 vertices are compressed unless disabled or the multi-source search is used
+    private static ChainCompression compressChains(final ReadOnlyGraph g) {
+        if (!Settings.getBoolean("HIGHWAYS_COMPRESS_CHAINS", true)
+                || (g.hasUniformWeights() && Settings.getBoolean("HIGHWAYS_MULTI_SOURCE_BFS", false))) {
+            return null;
+        }
 
-            SparseFunction<Integer, Double> distance = gws.x[1].weights;
+        final ChainCompression chains = new ChainCompression(g);
 
-            for (int idx = 0; idx < newReverseEdgeMapping.length; idx++) {
-                final int id = newReverseEdgeMapping[idx];
-                final int oldIdx = oldEdgeMapping.get(id);
-                distanceRemap[idx] = distance.apply(oldIdx);
-            }
+        System.out.println(String.format(
+                "Compressed %d of %d vertices into %d chains",
+                g.getNumberOfVertices() - chains.getNumberOfJunctions(),
+                g.getNumberOfVertices(),
+                chains.numChains
+        ));
+
+        return chains;
+    }
+
+    // Undirected graphs count every pair once if enabled, which neither runs over compressed chains nor merges
+    // twins (ranks are not symmetric between twins). The multi-source search counts all pairs.
+    private static SymmetricPairs symmetricPairs(final ReadOnlyGraph g) {
+        if (!Settings.getBoolean("HIGHWAYS_SYMMETRIC", false)) {
+            return null;
         }
 
-        final SparseFunction<Integer, Double> distance = new DoubleArraySparseFunction(
-                distanceRemap,
-                Double.POSITIVE_INFINITY
+        if (g.hasUniformWeights() && Settings.getBoolean("HIGHWAYS_MULTI_SOURCE_BFS", false)) {
+            System.out.println("HIGHWAYS_SYMMETRIC is skipped for the multi-source search");
+            return null;
+        }
+
+        if (!SymmetricPairs.appliesTo(g)) {
+            System.out.println("HIGHWAYS_SYMMETRIC is skipped, the graph is directed or has non-positive weights");
+            return null;
+        }
+
+        System.out.println("Undirected graph with positive weights, counting every pair once");
+
+        return new SymmetricPairs(g);
+    }
+
+    // Structural twins are run once per group unless disabled or the multi-source search is used, which runs
+    // batches of sources together. The distance is the second weight of the kernel if it has one.
+    private static SourceKernel mergeTwins(final SourceKernel kernel, final ReadOnlyGraph g, final DoubleSparseFunction distance) {
+        if (!Settings.getBoolean("HIGHWAYS_TWINS", true)
+                || (g.hasUniformWeights() && Settings.getBoolean("HIGHWAYS_MULTI_SOURCE_BFS", false))) {
+            return kernel;
+        }
+
+        final StructuralTwins twins = new StructuralTwins(g, distance);
+
+        System.out.println(String.format(
+                "Merged %d of %d sources into %d groups of structural twins",
+                twins.getNumberOfSkipped(),
+                g.getNumberOfVertices(),
+                twins.numGroups
+        ));
+
+        return twins.numGroups == 0 ? kernel : new TwinKernel(kernel, twins);
+    }
+
+    // All vertices of sourceGraph or the source range of HIGHWAYS_SHARD, resumable if HIGHWAYS_CHECKPOINT names
+    // a checkpoint file. The sources are the vertices of the folded core if the kernel runs on one.
+    private static Pair<SparseFunction<Integer, Double>, String> runAllSources(
+            final String algorithm,
+            final SourceKernel kernel,
+            final ReadOnlyGraph sourceGraph,
+            final ReadOnlyGraph g,
+            final DoubleSparseFunction distance
+    ) {
+        return runAllSources(
+                algorithm,
+                kernel,
+                sourceGraph.getNumberOfVertices(),
+                SourceScheduler.fromSettings(sourceGraph),
+                g,
+                distance
         );
+    }
+
+    // Sources 0..n-1 that are not vertices of a graph, e.g. block-local vertices
+    private static Pair<SparseFunction<Integer, Double>, String> runAllSources(
+            final String algorithm,
+            final SourceKernel kernel,
+            final int n,
+            final SourceScheduler scheduler,
+            final ReadOnlyGraph g,
+            final DoubleSparseFunction distance
+    ) {
+        final String checkpoint = Settings.get("HIGHWAYS_CHECKPOINT", null);
+        final Shard shard = Shard.fromSettings();
+
+        final int begin = shard == null ? 0 : shard.begin(n);
+        final int end = shard == null ? n : shard.end(n);
+        final long hash = checkpoint == null && shard == null ? 0 : CheckpointedRun.hash(g, distance);
+
+        // Graph hash and kernel configuration, merge only sums shards of the same run
+        final String run = shard == null ? null : String.format("%016x %s", hash, kernel.getConfiguration());
+
+        if (shard != null) {
+            System.out.println(String.format("Shard %d of %d: sources %d until %d", shard.index, shard.count, begin, end));
+        }
+
+        if (checkpoint == null) {
+            final int[] sources = new int[end - begin];
+
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = begin + i;
+            }
+
+            return new Pair<>(new DoubleArraySparseFunction(scheduler.run(kernel, sources)), run);
+        }
+
+        return new Pair<>(new DoubleArraySparseFunction(new CheckpointedRun(
+                kernel,
+                algorithm,
+                hash,
+                new File(checkpoint),
+                Settings.getInt("HIGHWAYS_CHECKPOINT_CHUNK", Math.max(1, n / 100)),
+                Settings.getLong("HIGHWAYS_CHECKPOINT_INTERVAL", 600) * 1000,
+                scheduler
+        ).run(begin, end)), run);
+    }
+
+    // Like runAlgorithm, null if there is no result
+    public static Pair<Iterable<Pair<Integer, Double>>, String> runTwoWeightAlgorithm(final String algorithm, final Pair<GraphWithWeights<Double>[], Mappings> gws) {
+        checkShardable(algorithm);
+
+        if (gws.x.length != 2) {
+            throw new IllegalArgumentException("Can only take weight/distance pairs");
+        }
+
+        if (gws.x[0].graph != gws.x[1].graph) {
+            throw new IllegalArgumentException("Graphs are not the same instance");
+        }
+
+        GraphWithWeights<Double> g = gws.x[0];
+        Pair<GraphWithWeights<Double>, Mappings> simplified = preprocess(new Pair<>(g, gws.y));
+
+        // Re-map distance labels after simplification
+        final SparseFunction<Integer, Double> distance = remapDistance(gws, simplified);
 
         long startTime = System.currentTimeMillis();
 
         System.out.println("Run algorithm " + algorithm);
 
-        final SparseFunction<Integer, Double> result;
+        final Pair<SparseFunction<Integer, Double>, String> result;
 
         switch (algorithm) {
             case "phd": {
-                result = new ProportionateHighwaynessDistance(
-                        simplified.x.graph,
-                        simplified.x.weights,
-                        distance
-                ).computeParallel();
+                final CsrGraph csr = CsrGraph.fromGraph(simplified.x);
+                final DoubleSparseFunction d = DoubleSparseFunction.of(distance, csr.getNumberOfEdges());
+                result = runAllSources(
+                        algorithm,
+                        mergeTwins(new ProportionateHighwaynessDistance(csr, d, compressChains(csr)), csr, d),
+                        csr,
+                        csr,
+                        d
+                );
                 break;
             }
             default:
@@ -174,10 +454,91 @@ public class GraphUtils {
 
         final int[] reverseMapping = simplified.y.edgeReverseMapping();
         final LucIntSet edges = simplified.x.graph.getEdges();
+        final SparseFunction<Integer, Double> values = result.x;
+
+        return new Pair<>(() -> edges.stream()
+                .filter(e -> values.apply(e) != null)
+                .map(e -> new Pair<>(reverseMapping[e], values.apply(e)))
+                .iterator(), result.y);
+    }
+
+    // Second weight of gws by the edge ids of the simplified graph
+    private static SparseFunction<Integer, Double> remapDistance(
+            final Pair<GraphWithWeights<Double>[], Mappings> gws,
+            final Pair<GraphWithWeights<Double>, Mappings> simplified
+    ) {
+        final double[] distanceRemap = new double[simplified.y.edgeMapping.size()];
+
+        // new index to id
+        final int[] newReverseEdgeMapping = simplified.y.edgeReverseMapping();
+        // id to old index
+        final Int2IntMap oldEdgeMapping = gws.y.edgeMapping;
+
+        final SparseFunction<Integer, Double> distance = gws.x[1].weights;
+
+        for (int idx = 0; idx < newReverseEdgeMapping.length; idx++) {
+            final int id = newReverseEdgeMapping[idx];
+            final int oldIdx = oldEdgeMapping.get(id);
+            distanceRemap[idx] = distance.apply(oldIdx);
+        }
+
+        return new DoubleArraySparseFunction(distanceRemap, Double.POSITIVE_INFINITY);
+    }
+
+    // All metrics from one search per source, edge metrics by edge id and vertex metrics by node id.
+    // The second graph of gws holds the distance of PHD and is only needed if PHD is computed.
+    public static Pair<Map<Metric, Iterable<Pair<Integer, Double>>>, Map<Metric, Iterable<Pair<Long, Double>>>> runMetrics(
+            final Set<Metric> metrics,
+            final Pair<GraphWithWeights<Double>[], Mappings> gws
+    ) {
+        if (Shard.fromSettings() != null) {
+            throw new IllegalArgumentException("Only edge_betweenness, edge_betweenness_blocks, highwayness_length and phd can be sharded");
+        }
+
+        if (gws.x.length > 1 && gws.x[0].graph != gws.x[1].graph) {
+            throw new IllegalArgumentException("Graphs are not the same instance");
+        }
+
+        final Pair<GraphWithWeights<Double>, Mappings> simplified = preprocess(new Pair<>(gws.x[0], gws.y));
+        final CsrGraph g = CsrGraph.fromGraph(simplified.x);
+        final DoubleSparseFunction distance = gws.x.length > 1
+                ? DoubleSparseFunction.of(remapDistance(gws, simplified), g.getNumberOfEdges())
+                : null;
+
+        final MultiStopWatch watch = new MultiStopWatch();
+
+        watch.start("algorithm");
+
+        System.out.println("Run metrics " + metrics);
+
+        final MultiMetricKernel kernel = new MultiMetricKernel(g, metrics, distance, compressChains(g));
+        final SparseFunction<Integer, Double> result = runAllSources("metrics", kernel, g, g, distance).x;
+
+        watch.stop("algorithm");
+
+        System.out.println(watch);
+
+        final int[] edgeReverseMapping = simplified.y.edgeReverseMapping();
+        final long[] nodeReverseMapping = simplified.y.nodeReverseMapping();
+        final LucIntSet edges = simplified.x.graph.getEdges();
+
+        final Map<Metric, Iterable<Pair<Integer, Double>>> edgeResults = new EnumMap<>(Metric.class);
+        final Map<Metric, Iterable<Pair<Long, Double>>> vertexResults = new EnumMap<>(Metric.class);
+
+        for (final Metric metric: kernel.getMetrics()) {
+            final int offset = kernel.offset(metric);
+
+            if (metric.perVertex) {
+                vertexResults.put(metric, () -> IntStream.range(0, g.getNumberOfVertices())
+                        .mapToObj(v -> new Pair<>(nodeReverseMapping[v], result.apply(offset + v)))
+                        .iterator());
+            } else {
+                edgeResults.put(metric, () -> edges.stream()
+                        .map(e -> new Pair<>(edgeReverseMapping[e], result.apply(offset + e)))
+                        .iterator());
+            }
+        }
 
-        return () -> edges.stream()
-                .filter(e -> result.apply(e) != null)
-                .map(e -> new Pair<>(reverseMapping[e], result.apply(e)))
-                .iterator();
+        return new Pair<>(edgeResults, vertexResults);
     }
 }
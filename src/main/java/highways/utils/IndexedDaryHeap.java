@@ -0,0 +1,222 @@
+package highways.utils;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+// Ties are broken by id, which makes the poll order deterministic
+public class IndexedDaryHeap implements IndexedPriorityQueue {
+    private final int arity;
+
+    private int[] heap;
+    private int size;
+
+    // Indexed by id, position is -1 if the id is not contained
+    private int[] position;
+    private double[] keys;
+
+    public IndexedDaryHeap(final int arity, final int capacity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("Arity has to be at least 2");
+        }
+
+        this.arity = arity;
+
+        heap = new int[Math.max(1, capacity)];
+        position = new int[Math.max(1, capacity)];
+        keys = new double[Math.max(1, capacity)];
+
+        Arrays.fill(position, -1);
+    }
+
+    private void ensureCapacity(final int id) {
+        if (id >= position.length) {
+            final int capacity = Math.max(id + 1, 2 * position.length);
+            final int oldCapacity = position.length;
+
+            heap = Arrays.copyOf(heap, capacity);
+            position = Arrays.copyOf(position, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+
+            Arrays.fill(position, oldCapacity, capacity, -1);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(final int id) {
+        return id < position.length && position[id] != -1;
+    }
+
+    @Override
+    public double getKey(final int id) {
+        if (!contains(id)) {
+            throw new NoSuchElementException("Id is not queued");
+        }
+
+        return keys[id];
+    }
+
+    @Override
+    public void insert(final int id, final double key) {
+        ensureCapacity(id);
+
+        if (position[id] != -1) {
+            throw new IllegalArgumentException("Id is already queued");
+        }
+
+        keys[id] = key;
+        heap[size] = id;
+        position[id] = size;
+        size++;
+
+        siftUp(size - 1);
+    }
+
+    @Override
+    public void decreaseKey(final int id, final double key) {
+        if (key > getKey(id)) {
+            throw new IllegalArgumentException("Key can only be decreased");
+        }
+
+        keys[id] = key;
+        siftUp(position[id]);
+    }
+
+    // Sets the key of a queued id to any value
+    public void updateKey(final int id, final double key) {
+        final double oldKey = getKey(id);
+
+        keys[id] = key;
+
+        if (key < oldKey) {
+            siftUp(position[id]);
+        } else {
+            siftDown(position[id]);
+        }
+    }
+
+    public void remove(final int id) {
+        final int i = position[id];
+
+        if (i == -1) {
+            throw new NoSuchElementException("Id is not queued");
+        }
+
+        size--;
+        position[id] = -1;
+
+        if (i != size) {
+            final int last = heap[size];
+            heap[i] = last;
+            position[last] = i;
+
+            siftUp(i);
+            siftDown(position[last]);
+        }
+    }
+
+    @Override
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+
+        return heap[0];
+    }
+
+    @Override
+    public double peekKey() {
+        return keys[peek()];
+    }
+
+    @Override
+    public int poll() {
+        final int top = peek();
+
+        size--;
+        position[top] = -1;
+
+        if (size > 0) {
+            final int last = heap[size];
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+
+        return top;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+
+        size = 0;
+    }
+
+    private boolean less(final int a, final int b) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+    }
+
+    private void siftUp(int i) {
+        final int id = heap[i];
+
+        while (i > 0) {
+            final int parent = (i - 1) / arity;
+            final int parentId = heap[parent];
+
+            if (!less(id, parentId)) {
+                break;
+            }
+
+            heap[i] = parentId;
+            position[parentId] = i;
+            i = parent;
+        }
+
+        heap[i] = id;
+        position[id] = i;
+    }
+
+    private void siftDown(int i) {
+        final int id = heap[i];
+
+        while (true) {
+            final int first = i * arity + 1;
+
+            if (first >= size) {
+                break;
+            }
+
+            final int end = Math.min(first + arity, size);
+            int min = first;
+
+            for (int c = first + 1; c < end; c++) {
+                if (less(heap[c], heap[min])) {
+                    min = c;
+                }
+            }
+
+            if (!less(heap[min], id)) {
+                break;
+            }
+
+            heap[i] = heap[min];
+            position[heap[i]] = i;
+            i = min;
+        }
+
+        heap[i] = id;
+        position[id] = i;
+    }
+}
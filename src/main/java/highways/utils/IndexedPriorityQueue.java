@@ -0,0 +1,50 @@
+package highways.utils;
+
+// Min-priority queue of integer ids (vertices) with decrease-key.
+// Every id is contained at most once, so searches do not have to skip stale entries.
+public interface IndexedPriorityQueue {
+    enum Type {
+        // d-ary heap, any keys
+        DARY,
+        // Radix heap, keys have to be non-negative and never smaller than the last polled or peeked key
+        RADIX
+    }
+
+    boolean isEmpty();
+    int size();
+    boolean contains(final int id);
+    double getKey(final int id);
+
+    void insert(final int id, final double key);
+    void decreaseKey(final int id, final double key);
+
+    int peek();
+    double peekKey();
+    int poll();
+
+    // Removes all ids in O(size)
+    void clear();
+
+    default void insertOrDecrease(final int id, final double key) {
+        if (contains(id)) {
+            decreaseKey(id, key);
+        } else {
+            insert(id, key);
+        }
+    }
+
+    static IndexedPriorityQueue create(final int capacity) {
+        return create(Settings.getQueueType(), capacity);
+    }
+
+    static IndexedPriorityQueue create(final Type type, final int capacity) {
+        switch (type) {
+            case DARY:
+                return new IndexedDaryHeap(4, capacity);
+            case RADIX:
+                return new RadixHeap(capacity);
+            default:
+                throw new IllegalArgumentException("Unknown queue type");
+        }
+    }
+}
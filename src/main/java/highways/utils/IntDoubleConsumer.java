@@ -0,0 +1,6 @@
+package highways.utils;
+
+@FunctionalInterface
+public interface IntDoubleConsumer {
+    void accept(final int index, final double value);
+}
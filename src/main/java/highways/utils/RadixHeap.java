@@ -0,0 +1,214 @@
+package highways.utils;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+// Addressable radix heap for monotone searches such as Dijkstra with non-negative weights.
+// Non-negative doubles are ordered like their IEEE 754 bit patterns, so the buckets are chosen by the
+// highest bit in which a key differs from the last polled key. Bucket 0 holds keys equal to it.
+// Peeking already moves the minimum into bucket 0, so later keys must not be smaller than a peeked key either.
+public class RadixHeap implements IndexedPriorityQueue {
+    private static final int BUCKETS = 65;
+
+    private final int[][] buckets = new int[BUCKETS][];
+    private final int[] bucketSizes = new int[BUCKETS];
+    private int size;
+
+    private long last;
+
+    // Indexed by id, bucket is -1 if the id is not contained
+    private int[] bucket;
+    private int[] position;
+    private long[] keys;
+
+    public RadixHeap(final int capacity) {
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets[b] = new int[4];
+        }
+
+        bucket = new int[Math.max(1, capacity)];
+        position = new int[Math.max(1, capacity)];
+        keys = new long[Math.max(1, capacity)];
+
+        Arrays.fill(bucket, -1);
+    }
+
+    private void ensureCapacity(final int id) {
+        if (id >= bucket.length) {
+            final int capacity = Math.max(id + 1, 2 * bucket.length);
+            final int oldCapacity = bucket.length;
+
+            bucket = Arrays.copyOf(bucket, capacity);
+            position = Arrays.copyOf(position, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+
+            Arrays.fill(bucket, oldCapacity, capacity, -1);
+        }
+    }
+
+    private static long toBits(final double key) {
+        // Adding 0.0 turns -0.0 into 0.0
+        final long bits = Double.doubleToRawLongBits(key + 0.0);
+
+        if (bits < 0 || Double.isNaN(key)) {
+            throw new IllegalArgumentException("Radix heap only supports non-negative keys");
+        }
+
+        return bits;
+    }
+
+    private int bucketIndex(final long bits) {
+        return bits == last ? 0 : 64 - Long.numberOfLeadingZeros(bits ^ last);
+    }
+
+    private void put(final int id, final long bits) {
+        final int b = bucketIndex(bits);
+
+        if (bucketSizes[b] == buckets[b].length) {
+            buckets[b] = Arrays.copyOf(buckets[b], 2 * buckets[b].length);
+        }
+
+        keys[id] = bits;
+        bucket[id] = b;
+        position[id] = bucketSizes[b];
+        buckets[b][bucketSizes[b]++] = id;
+    }
+
+    private void take(final int id) {
+        final int b = bucket[id];
+        final int i = position[id];
+        final int moved = buckets[b][--bucketSizes[b]];
+
+        buckets[b][i] = moved;
+        position[moved] = i;
+        bucket[id] = -1;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(final int id) {
+        return id < bucket.length && bucket[id] != -1;
+    }
+
+    @Override
+    public double getKey(final int id) {
+        if (!contains(id)) {
+            throw new NoSuchElementException("Id is not queued");
+        }
+
+        return Double.longBitsToDouble(keys[id]);
+    }
+
+    @Override
+    public void insert(final int id, final double key) {
+        ensureCapacity(id);
+
+        if (bucket[id] != -1) {
+            throw new IllegalArgumentException("Id is already queued");
+        }
+
+        final long bits = toBits(key);
+
+        if (bits < last) {
+            throw new IllegalArgumentException("Keys have to be monotone");
+        }
+
+        put(id, bits);
+        size++;
+    }
+
+    @Override
+    public void decreaseKey(final int id, final double key) {
+        final long bits = toBits(key);
+
+        if (!contains(id) || bits > keys[id]) {
+            throw new IllegalArgumentException("Key can only be decreased for queued ids");
+        }
+
+        if (bits < last) {
+            throw new IllegalArgumentException("Keys have to be monotone");
+        }
+
+        take(id);
+        put(id, bits);
+    }
+
+    // Moves the minimum into bucket 0
+    private void refill() {
+        if (bucketSizes[0] > 0) {
+            return;
+        }
+
+        int b = 1;
+
+        while (bucketSizes[b] == 0) {
+            b++;
+        }
+
+        long min = Long.MAX_VALUE;
+
+        for (int i = 0; i < bucketSizes[b]; i++) {
+            min = Math.min(min, keys[buckets[b][i]]);
+        }
+
+        last = min;
+
+        // Every element of bucket b lands in a lower bucket relative to the new minimum
+        final int[] ids = buckets[b];
+        final int count = bucketSizes[b];
+        bucketSizes[b] = 0;
+
+        for (int i = 0; i < count; i++) {
+            put(ids[i], keys[ids[i]]);
+        }
+    }
+
+    @Override
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+
+        refill();
+
+        return buckets[0][bucketSizes[0] - 1];
+    }
+
+    @Override
+    public double peekKey() {
+        return Double.longBitsToDouble(keys[peek()]);
+    }
+
+    @Override
+    public int poll() {
+        final int top = peek();
+
+        take(top);
+        size--;
+
+        return top;
+    }
+
+    @Override
+    public void clear() {
+        for (int b = 0; b < BUCKETS; b++) {
+            for (int i = 0; i < bucketSizes[b]; i++) {
+                bucket[buckets[b][i]] = -1;
+            }
+
+            bucketSizes[b] = 0;
+        }
+
+        size = 0;
+        last = 0;
+    }
+}
@@ -0,0 +1,32 @@
+package highways.utils;
+
+import java.util.Locale;
+
+// Tuning knobs are read from the environment, like POSTGRES_PASSWORD
+public class Settings {
+    public static String get(final String name, final String defaultValue) {
+        final String value = System.getenv(name);
+
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    public static int getInt(final String name, final int defaultValue) {
+        return Integer.parseInt(get(name, Integer.toString(defaultValue)));
+    }
+
+    public static long getLong(final String name, final long defaultValue) {
+        return Long.parseLong(get(name, Long.toString(defaultValue)));
+    }
+
+    public static double getDouble(final String name, final double defaultValue) {
+        return Double.parseDouble(get(name, Double.toString(defaultValue)));
+    }
+
+    public static boolean getBoolean(final String name, final boolean defaultValue) {
+        return get(name, defaultValue ? "yes" : "no").equals("yes");
+    }
+
+    public static IndexedPriorityQueue.Type getQueueType() {
+        return IndexedPriorityQueue.Type.valueOf(get("HIGHWAYS_QUEUE", "dary").toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,50 @@
+package highways.utils;
+
+// Part INDEX of COUNT of the sources of an all-sources run, given as HIGHWAYS_SHARD=INDEX/COUNT
+public class Shard {
+    public final int index;
+    public final int count;
+
+    public Shard(final int index, final int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Shard index has to be in [0, count)");
+        }
+
+        this.index = index;
+        this.count = count;
+    }
+
+    // Consecutive source ranges of (almost) equal size
+    public int begin(final int n) {
+        return (int) ((long) n * index / count);
+    }
+
+    public int end(final int n) {
+        return (int) ((long) n * (index + 1) / count);
+    }
+
+    public String fileName(final String tableName) {
+        return fileName(tableName, index, count);
+    }
+
+    public static String fileName(final String tableName, final int index, final int count) {
+        return String.format("results/%s.shard-%d-of-%d", tableName, index, count);
+    }
+
+    // Null if the run is not sharded
+    public static Shard fromSettings() {
+        final String shard = Settings.get("HIGHWAYS_SHARD", null);
+
+        if (shard == null) {
+            return null;
+        }
+
+        final String[] parts = shard.split("/");
+
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("HIGHWAYS_SHARD has to be INDEX/COUNT");
+        }
+
+        return new Shard(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+}
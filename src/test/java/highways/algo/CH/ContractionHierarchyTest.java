@@ -0,0 +1,215 @@
+package highways.algo.CH;
+
+import grph.Grph;
+import highways.FixedGrph;
+import highways.GraphWithWeights;
+import highways.utils.DoubleArraySparseFunction;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Contracts small random graphs with every ordering strategy, sequentially and in parallel rounds, and answers
+// queries on the hierarchy with an upward search from both ends. Distances have to be those of the original graph,
+// also with zero weight arcs, parallel edges and loops, and with witness searches cut short by the hop and settle
+// limits. Weights are multiples of 0.5, so all sums are exact.
+public class ContractionHierarchyTest {
+    private static final int GRAPHS = 20;
+
+    // Hop and settle limit, 0 for no limit
+    private static final int[][] LIMITS = {{0, 0}, {1, 0}, {0, 1}, {2, 3}};
+
+    @Test
+    public void undirected() {
+        for (int seed = 0; seed < GRAPHS; seed++) {
+            check(seed, false);
+        }
+    }
+
+    @Test
+    public void directed() {
+        for (int seed = 0; seed < GRAPHS; seed++) {
+            check(seed, true);
+        }
+    }
+
+    private static void check(final long seed, final boolean directed) {
+        final Random random = new Random(seed);
+        final GraphWithWeights<Double> g = randomGraph(random, directed);
+        final double[][] expected = distances(g);
+
+        for (final Map.Entry<String, OrderingStrategy> strategy: strategies(g, random).entrySet()) {
+            for (final int[] limits: LIMITS) {
+                final String name = (directed ? "directed" : "undirected") + " seed " + seed + ", "
+                        + strategy.getKey() + ", limits " + limits[0] + "/" + limits[1];
+
+                final ContractionGraph sequential = new ContractionGraph(g, limits[0], limits[1]);
+                ContractionEngine.runSequential(sequential, strategy.getValue());
+                checkQueries(sequential, expected, name + ", sequential");
+
+                final int[] numShortcuts = new int[2];
+
+                for (int k = 0; k < 2; k++) {
+                    final int threads = k == 0 ? 1 : 4;
+                    final ContractionGraph parallel = new ContractionGraph(g, limits[0], limits[1]);
+
+                    numShortcuts[k] = ContractionEngine.runParallel(parallel, strategy.getValue(), threads);
+                    checkQueries(parallel, expected, name + ", " + threads + " threads");
+                }
+
+                // Rounds do not depend on the number of threads, the random order is drawn anew in every run
+                if (!(strategy.getValue() instanceof RandomStrategy)) {
+                    assertEquals(name + ", shortcuts of 1 and 4 threads", numShortcuts[0], numShortcuts[1]);
+                }
+            }
+        }
+    }
+
+    private static Map<String, OrderingStrategy> strategies(final GraphWithWeights<Double> g, final Random random) {
+        final int m = g.graph.getNumberOfEdges();
+        final double[] priority = new double[m];
+
+        for (int e = 0; e < m; e++) {
+            priority[e] = random.nextInt(10);
+        }
+
+        final DoubleArraySparseFunction edgePriority = new DoubleArraySparseFunction(priority, 0.0);
+
+        final Map<String, OrderingStrategy> strategies = new LinkedHashMap<>();
+        strategies.put("edge difference", new EdgeDifferenceStrategy());
+        strategies.put("random", new RandomStrategy());
+        strategies.put("edge priority", new EdgePriorityStrategy(g, edgePriority));
+        strategies.put("simple ramps", new SimpleRampsStrategy());
+        strategies.put("continuous ramps", new ContinuousRampsStrategy(g, edgePriority, true));
+        strategies.put("continuous ramps without updates", new ContinuousRampsStrategy(g, edgePriority, false));
+        strategies.put("highway ramps", new HighwayRampsStrategy(g, edgePriority, Math.max(1, m / 4)));
+
+        return strategies;
+    }
+
+    // Contracted vertices keep the arcs they had when they were contracted, which lead to vertices contracted
+    // later. The distance from s to t is the shortest sum of an upward path from s and one from t in reverse.
+    private static void checkQueries(final ContractionGraph cg, final double[][] expected, final String name) {
+        final int n = cg.getNumberOfVertices();
+        final double[][] forward = new double[n][];
+        final double[][] backward = new double[n][];
+
+        for (int v = 0; v < n; v++) {
+            assertTrue(name + ", " + v + " contracted", cg.isContracted(v));
+
+            forward[v] = upward(cg, v, true);
+            backward[v] = upward(cg, v, false);
+        }
+
+        for (int s = 0; s < n; s++) {
+            for (int t = 0; t < n; t++) {
+                double distance = Double.POSITIVE_INFINITY;
+
+                for (int x = 0; x < n; x++) {
+                    distance = Math.min(distance, forward[s][x] + backward[t][x]);
+                }
+
+                assertEquals(name + ", distance " + s + " to " + t, expected[s][t], distance, 0.0);
+            }
+        }
+    }
+
+    // Dijkstra on the out-arcs or in-arcs of the contracted graph, quadratic as the graphs are small
+    private static double[] upward(final ContractionGraph cg, final int source, final boolean out) {
+        final int n = cg.getNumberOfVertices();
+        final double[] distance = new double[n];
+        final boolean[] settled = new boolean[n];
+
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        distance[source] = 0.0;
+
+        for (int k = 0; k < n; k++) {
+            int x = -1;
+
+            for (int v = 0; v < n; v++) {
+                if (!settled[v] && distance[v] < Double.POSITIVE_INFINITY && (x == -1 || distance[v] < distance[x])) {
+                    x = v;
+                }
+            }
+
+            if (x == -1) {
+                break;
+            }
+
+            settled[x] = true;
+
+            final int degree = out ? cg.getOutDegree(x) : cg.getInDegree(x);
+
+            for (int i = 0; i < degree; i++) {
+                final int y = out ? cg.getOutHead(x, i) : cg.getInTail(x, i);
+                final double weight = out ? cg.getOutWeight(x, i) : cg.getInWeight(x, i);
+
+                distance[y] = Math.min(distance[y], distance[x] + weight);
+            }
+        }
+
+        return distance;
+    }
+
+    // Floyd-Warshall on the edges of the original graph
+    private static double[][] distances(final GraphWithWeights<Double> g) {
+        final int n = g.graph.getNumberOfVertices();
+        final double[][] distance = new double[n][n];
+
+        for (int v = 0; v < n; v++) {
+            Arrays.fill(distance[v], Double.POSITIVE_INFINITY);
+            distance[v][v] = 0.0;
+        }
+
+        for (final int e: g.graph.getEdges()) {
+            final double weight = g.weights.apply(e);
+            final int[] ends = g.graph.getVerticesIncidentToEdge(e).toIntArray();
+            final int u = g.graph.isDirectedSimpleEdge(e) ? g.graph.getDirectedSimpleEdgeTail(e) : ends[0];
+            final int w = g.graph.isDirectedSimpleEdge(e) ? g.graph.getDirectedSimpleEdgeHead(e) : ends[ends.length - 1];
+
+            distance[u][w] = Math.min(distance[u][w], weight);
+
+            if (!g.graph.isDirectedSimpleEdge(e)) {
+                distance[w][u] = Math.min(distance[w][u], weight);
+            }
+        }
+
+        for (int x = 0; x < n; x++) {
+            for (int u = 0; u < n; u++) {
+                for (int w = 0; w < n; w++) {
+                    distance[u][w] = Math.min(distance[u][w], distance[u][x] + distance[x][w]);
+                }
+            }
+        }
+
+        return distance;
+    }
+
+    // A path with random chords, parallel edges and loops, directed graphs have unreachable pairs. A quarter of
+    // the edges has weight 0, so there are many paths of the same length and ties between a witness and the path
+    // through v.
+    private static GraphWithWeights<Double> randomGraph(final Random random, final boolean directed) {
+        final Grph grph = new FixedGrph();
+        final int n = 2 + random.nextInt(30);
+        final int m = n + random.nextInt(2 * n);
+        final double[] weights = new double[n - 1 + m];
+
+        for (int v = 0; v < n; v++) {
+            grph.addVertex(v);
+        }
+
+        for (int k = 0; k < n - 1 + m; k++) {
+            final int u = k < n - 1 ? k : random.nextInt(n);
+            final int w = k < n - 1 ? k + 1 : random.nextInt(n);
+
+            weights[grph.addSimpleEdge(u, w, directed)] = random.nextInt(4) == 0 ? 0.0 : 0.5 * (1 + random.nextInt(8));
+        }
+
+        return new GraphWithWeights<>(grph, new DoubleArraySparseFunction(weights, Double.POSITIVE_INFINITY));
+    }
+}
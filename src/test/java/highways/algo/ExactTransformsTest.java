@@ -0,0 +1,587 @@
+package highways.algo;
+
+import highways.CsrGraph;
+import highways.algo.MultiMetricKernel.Metric;
+import highways.utils.DoubleArraySparseFunction;
+import highways.utils.DoubleSparseFunction;
+import highways.utils.FixedPoint;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Compressed chains (HIGHWAYS_COMPRESS_CHAINS), folded trees (HIGHWAYS_FOLD_TREES), structural twins
+// (HIGHWAYS_TWINS), the multi-source search (HIGHWAYS_MULTI_SOURCE_BFS), symmetric pairs (HIGHWAYS_SYMMETRIC),
+// edge_betweenness_blocks and the fused metrics kernel have to give the results of the plain kernels. The kernels are combined like GraphUtils
+// does, on small random graphs with chains, dead-end trees and twins, for all weights that are summed exactly.
+public class ExactTransformsTest {
+    private static final int GRAPHS = 20;
+    private static final double RESOLUTION = 0.1;
+
+    private enum Weights {
+        INTEGER,
+        FIXED_POINT,
+        UNIFORM
+    }
+
+    @Test
+    public void edgeBetweennessUndirected() {
+        for (final Weights weights: Weights.values()) {
+            for (int seed = 0; seed < GRAPHS; seed++) {
+                checkEdgeBetweenness(randomGraph(seed, false, weights), "undirected " + weights + " seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    public void edgeBetweennessDirected() {
+        for (final Weights weights: Weights.values()) {
+            for (int seed = 0; seed < GRAPHS; seed++) {
+                checkEdgeBetweenness(randomGraph(seed, true, weights), "directed " + weights + " seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    public void highwaynessLengthUndirected() {
+        for (final Weights weights: Weights.values()) {
+            for (int seed = 0; seed < GRAPHS; seed++) {
+                checkHighwaynessLength(randomGraph(seed, false, weights), "undirected " + weights + " seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    public void highwaynessLengthDirected() {
+        for (final Weights weights: Weights.values()) {
+            for (int seed = 0; seed < GRAPHS; seed++) {
+                checkHighwaynessLength(randomGraph(seed, true, weights), "directed " + weights + " seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    public void phdUndirected() {
+        for (final Weights weights: Weights.values()) {
+            for (int seed = 0; seed < GRAPHS; seed++) {
+                checkPhd(randomGraph(seed, false, weights), "undirected " + weights + " seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    public void phdDirected() {
+        for (final Weights weights: Weights.values()) {
+            for (int seed = 0; seed < GRAPHS; seed++) {
+                checkPhd(randomGraph(seed, true, weights), "directed " + weights + " seed " + seed);
+            }
+        }
+    }
+
+    @Test
+    public void multiSourceBfs() {
+        for (final boolean directed: new boolean[]{false, true}) {
+            for (int seed = 0; seed < GRAPHS; seed++) {
+                final String name = (directed ? "directed" : "undirected") + " seed " + seed;
+
+                checkMultiSource(randomGraph(seed, directed, Weights.UNIFORM), name);
+                checkMultiSource(randomComponents(seed, directed, Weights.UNIFORM), name + ", components");
+            }
+        }
+    }
+
+    @Test
+    public void blockEdgeBetweenness() {
+        int compared = 0;
+
+        for (final boolean directed: new boolean[]{false, true}) {
+            for (final Weights weights: Weights.values()) {
+                for (int seed = 0; seed < GRAPHS; seed++) {
+                    final String name = (directed ? "directed " : "undirected ") + weights + " seed " + seed;
+
+                    compared += checkBlocks(randomGraph(seed, directed, weights), name);
+                    compared += checkBlocks(randomBlocks(seed, directed, weights), name + ", bridged");
+                }
+            }
+        }
+
+        // All undirected graphs and some of the directed ones
+        assertTrue("Strongly connected graphs compared", compared > 2 * Weights.values().length * GRAPHS);
+    }
+
+    @Test
+    public void symmetricPairs() {
+        for (final Weights weights: Weights.values()) {
+            for (int seed = 0; seed < GRAPHS; seed++) {
+                final String name = "undirected " + weights + " seed " + seed;
+
+                checkSymmetric(randomGraph(seed, false, weights), name);
+                checkSymmetric(randomComponents(seed, false, weights), name + ", components");
+            }
+        }
+    }
+
+    @Test
+    public void multiMetricKernel() {
+        for (final boolean directed: new boolean[]{false, true}) {
+            for (final Weights weights: Weights.values()) {
+                for (int seed = 0; seed < GRAPHS; seed++) {
+                    final String name = (directed ? "directed " : "undirected ") + weights + " seed " + seed;
+
+                    checkMultiMetric(randomGraph(seed, directed, weights), name);
+                }
+            }
+        }
+    }
+
+    private static void checkEdgeBetweenness(final Builder b, final String name) {
+        final CsrGraph g = b.build();
+        final double[] expected = run(new EdgeBetweennessCentrality(g), g.getNumberOfVertices());
+
+        final ChainCompression chains = new ChainCompression(g);
+        final StructuralTwins twins = twins(g, null);
+        final TreeFolding folding = folding(g);
+
+        assertSame(name + ", chains", expected, run(new EdgeBetweennessCentrality(g, chains), g.getNumberOfVertices()));
+        assertSame(name + ", twins", expected, run(
+                new TwinKernel(new EdgeBetweennessCentrality(g), twins),
+                g.getNumberOfVertices()
+        ));
+        assertSame(name + ", chains and twins", expected, run(
+                new TwinKernel(new EdgeBetweennessCentrality(g, chains), twins),
+                g.getNumberOfVertices()
+        ));
+
+        final int sources = folding.core.getNumberOfVertices();
+
+        assertSame(name + ", folded", expected, run(new FoldedEdgeBetweenness(folding), sources));
+        assertSame(name + ", folded with chains", expected, run(
+                new FoldedEdgeBetweenness(folding, new ChainCompression(folding.core)),
+                sources
+        ));
+    }
+
+    private static void checkHighwaynessLength(final Builder b, final String name) {
+        final CsrGraph g = b.build();
+        final double[] expected = run(new HighwaynessLength(g), g.getNumberOfVertices());
+
+        final ChainCompression chains = new ChainCompression(g);
+        final StructuralTwins twins = twins(g, null);
+        final TreeFolding folding = folding(g);
+
+        assertSame(name + ", chains", expected, run(new HighwaynessLength(g, chains), g.getNumberOfVertices()));
+        assertSame(name + ", twins", expected, run(
+                new TwinKernel(new HighwaynessLength(g), twins),
+                g.getNumberOfVertices()
+        ));
+        assertSame(name + ", chains and twins", expected, run(
+                new TwinKernel(new HighwaynessLength(g, chains), twins),
+                g.getNumberOfVertices()
+        ));
+
+        final int sources = folding.core.getNumberOfVertices();
+
+        assertSame(name + ", folded", expected, run(new FoldedHighwaynessLength(folding), sources));
+        assertSame(name + ", folded with chains", expected, run(
+                new FoldedHighwaynessLength(folding, new ChainCompression(folding.core)),
+                sources
+        ));
+    }
+
+    // Only strongly connected graphs are split into blocks, returns the number of graphs compared
+    private static int checkBlocks(final Builder b, final String name) {
+        final CsrGraph g = b.build();
+        final BlockDecomposition blocks = new BlockDecomposition(g);
+
+        if (!blocks.isStronglyConnected()) {
+            assertTrue(name + ", undirected graph is strongly connected", b.directed);
+            return 0;
+        }
+
+        assertTrue(name + ", graph has articulation points", blocks.numBlocks > 1);
+        assertSame(name + ", blocks", run(new EdgeBetweennessCentrality(g), g.getNumberOfVertices()), run(
+                new BlockEdgeBetweenness(blocks),
+                blocks.getNumberOfSources()
+        ));
+
+        return 1;
+    }
+
+    // Every pair counted once from the source ranked first, with the search stopped early
+    private static void checkSymmetric(final Builder b, final String name) {
+        final CsrGraph g = b.build();
+
+        assertTrue(name + ", pairs apply", SymmetricPairs.appliesTo(g));
+        assertSame(name + ", symmetric pairs", run(new EdgeBetweennessCentrality(g), g.getNumberOfVertices()), run(
+                new EdgeBetweennessCentrality(g, null, new SymmetricPairs(g)),
+                g.getNumberOfVertices()
+        ));
+    }
+
+    // Every slice of the fused results against its single kernel, without and with chains. PHD and highwayness
+    // length together take the fewest arcs from a forward pass, as the search tracks the PHD distance.
+    private static void checkMultiMetric(final Builder b, final String name) {
+        final CsrGraph g = b.build();
+        final int n = g.getNumberOfVertices();
+        final DoubleSparseFunction distance = b.distance();
+
+        final Map<Metric, double[]> expected = new EnumMap<>(Metric.class);
+        expected.put(Metric.EDGE_BETWEENNESS, run(new EdgeBetweennessCentrality(g), n));
+        expected.put(Metric.VERTEX_BETWEENNESS, run(new BetweennessCentrality(g), n));
+        expected.put(Metric.HIGHWAYNESS_LENGTH, run(new HighwaynessLength(g), n));
+        expected.put(Metric.PHD, run(new ProportionateHighwaynessDistance(g, distance), n));
+        expected.put(Metric.CLOSENESS, closeness(g));
+
+        final List<Set<Metric>> selections = new ArrayList<>();
+        selections.add(EnumSet.complementOf(EnumSet.of(Metric.PHD)));
+        selections.add(EnumSet.of(Metric.PHD, Metric.HIGHWAYNESS_LENGTH));
+        selections.add(EnumSet.of(Metric.PHD, Metric.EDGE_BETWEENNESS));
+        selections.add(EnumSet.allOf(Metric.class));
+
+        for (final Set<Metric> metrics: selections) {
+            final DoubleSparseFunction d = metrics.contains(Metric.PHD) ? distance : null;
+
+            for (final ChainCompression chains: new ChainCompression[]{null, new ChainCompression(g)}) {
+                final MultiMetricKernel kernel = new MultiMetricKernel(g, metrics, d, chains);
+                final double[] result = run(kernel, n);
+
+                for (final Metric metric: metrics) {
+                    final int offset = kernel.offset(metric);
+                    final int size = metric.perVertex ? n : g.getNumberOfEdges();
+
+                    assertSame(
+                            name + ", " + metrics + (chains == null ? "" : " with chains") + ", " + metric.label,
+                            expected.get(metric),
+                            Arrays.copyOfRange(result, offset, offset + size)
+                    );
+                }
+            }
+        }
+    }
+
+    // (reached - 1) / sum of shortest path weights by a quadratic Dijkstra, 0 if no other vertex is reached
+    private static double[] closeness(final CsrGraph g) {
+        final int n = g.getNumberOfVertices();
+        final double[] closeness = new double[n];
+
+        for (int s = 0; s < n; s++) {
+            final double[] weight = new double[n];
+            final boolean[] settled = new boolean[n];
+            Arrays.fill(weight, Double.POSITIVE_INFINITY);
+            weight[s] = 0.0;
+
+            int reached = 0;
+            double farness = 0.0;
+
+            while (true) {
+                int v = -1;
+
+                for (int u = 0; u < n; u++) {
+                    if (!settled[u] && weight[u] < Double.POSITIVE_INFINITY && (v == -1 || weight[u] < weight[v])) {
+                        v = u;
+                    }
+                }
+
+                if (v == -1) {
+                    break;
+                }
+
+                settled[v] = true;
+                reached++;
+                farness += weight[v];
+
+                for (int i = g.getOutBegin(v); i < g.getOutEnd(v); i++) {
+                    weight[g.getOutHead(i)] = Math.min(weight[g.getOutHead(i)], weight[v] + g.getOutWeight(i));
+                }
+            }
+
+            closeness[s] = farness > 0.0 ? (reached - 1) / farness : 0.0;
+        }
+
+        return closeness;
+    }
+
+    // Sources are searched 64 at a time, the last batch is not full
+    private static void checkMultiSource(final Builder b, final String name) {
+        final CsrGraph g = b.build();
+        final int n = g.getNumberOfVertices();
+
+        assertTrue(name + ", last batch is not full", n % MultiSourceBfs.WIDTH != 0);
+
+        assertSame(name + ", vertex betweenness", run(new BetweennessCentrality(g), n), run(
+                new BetweennessCentrality(g, null, null, true),
+                n
+        ));
+        assertSame(name + ", edge betweenness", run(new EdgeBetweennessCentrality(g), n), run(
+                new EdgeBetweennessCentrality(g, true),
+                n
+        ));
+        assertSame(name + ", highwayness length", run(new HighwaynessLength(g), n), run(
+                new HighwaynessLength(g, true),
+                n
+        ));
+    }
+
+    // PHD is never folded
+    private static void checkPhd(final Builder b, final String name) {
+        final CsrGraph g = b.build();
+        final DoubleSparseFunction distance = b.distance();
+        final double[] expected = run(new ProportionateHighwaynessDistance(g, distance), g.getNumberOfVertices());
+
+        final ChainCompression chains = new ChainCompression(g);
+        final StructuralTwins twins = twins(g, distance);
+
+        assertSame(name + ", chains", expected, run(
+                new ProportionateHighwaynessDistance(g, distance, chains),
+                g.getNumberOfVertices()
+        ));
+        assertSame(name + ", twins", expected, run(
+                new TwinKernel(new ProportionateHighwaynessDistance(g, distance), twins),
+                g.getNumberOfVertices()
+        ));
+        assertSame(name + ", chains and twins", expected, run(
+                new TwinKernel(new ProportionateHighwaynessDistance(g, distance, chains), twins),
+                g.getNumberOfVertices()
+        ));
+    }
+
+    // The random graphs always have twins and trees, so the transforms are not skipped
+    private static StructuralTwins twins(final CsrGraph g, final DoubleSparseFunction distance) {
+        final StructuralTwins twins = new StructuralTwins(g, distance);
+        assertTrue("Graph has twins", twins.numGroups > 0);
+        return twins;
+    }
+
+    private static TreeFolding folding(final CsrGraph g) {
+        final TreeFolding folding = new TreeFolding(g);
+        assertTrue("Graph has dead-end trees", folding.getNumberOfFolded() > 0);
+        return folding;
+    }
+
+    private static double[] run(final SourceKernel kernel, final int sources) {
+        final SourceScheduler scheduler = new SourceScheduler(1, SourceScheduler.Accumulation.THREAD_LOCAL);
+        scheduler.setReportProgress(false);
+
+        return scheduler.run(kernel, sources);
+    }
+
+    // Equal up to the order in which the contributions are summed
+    private static void assertSame(final String name, final double[] expected, final double[] actual) {
+        assertEquals(name + ", result size", expected.length, actual.length);
+
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(name + ", index " + i, expected[i], actual[i], 1e-9 * Math.max(1.0, Math.abs(expected[i])));
+        }
+    }
+
+    // Random core around a ring with chords, chains of degree-2 vertices between core vertices, dead-end trees
+    // and two twins: one of a dead end and one of any vertex. Directed graphs also get one-way arcs and chains.
+    private static Builder randomGraph(final long seed, final boolean directed, final Weights weights) {
+        final Random random = new Random(seed);
+        final Builder b = new Builder(random, directed, weights);
+
+        addComponent(b, random);
+
+        return b;
+    }
+
+    // Several random graphs side by side, more vertices than one multi-source batch but not a multiple of it
+    private static Builder randomComponents(final long seed, final boolean directed, final Weights weights) {
+        final Random random = new Random(seed);
+        final Builder b = new Builder(random, directed, weights);
+
+        while (b.n <= MultiSourceBfs.WIDTH) {
+            addComponent(b, random);
+        }
+
+        if (b.n % MultiSourceBfs.WIDTH == 0) {
+            b.addVertex();
+        }
+
+        return b;
+    }
+
+    // Two random graphs joined by a two-way bridge between random vertices
+    private static Builder randomBlocks(final long seed, final boolean directed, final Weights weights) {
+        final Random random = new Random(seed);
+        final Builder b = new Builder(random, directed, weights);
+
+        addComponent(b, random);
+
+        final int first = b.n;
+
+        addComponent(b, random);
+        b.link(random.nextInt(first), first + random.nextInt(b.n - first), true);
+
+        return b;
+    }
+
+    private static void addComponent(final Builder b, final Random random) {
+        final int first = b.n;
+        final int core = 5 + random.nextInt(6);
+
+        for (int v = 0; v < core; v++) {
+            b.addVertex();
+        }
+
+        for (int v = 0; v < core; v++) {
+            b.link(first + v, first + (v + 1) % core, !b.directed || random.nextBoolean());
+        }
+
+        for (int k = 0; k < core / 2; k++) {
+            b.link(first + random.nextInt(core), first + random.nextInt(core), !b.directed || random.nextBoolean());
+        }
+
+        for (int k = 0; k < 3; k++) {
+            final int last = first + random.nextInt(core);
+            final boolean twoWay = !b.directed || random.nextInt(4) != 0;
+            int previous = first + random.nextInt(core);
+
+            for (int j = random.nextInt(3); j >= 0; j--) {
+                final int x = b.addVertex();
+                b.link(previous, x, twoWay);
+                previous = x;
+            }
+
+            b.link(previous, last, twoWay);
+        }
+
+        // Tree edges are always two-way, a new vertex hangs from any earlier one
+        for (int k = 0; k < 6; k++) {
+            final int parent = first + random.nextInt(b.n - first);
+            b.link(parent, b.addVertex(), true);
+        }
+
+        b.twin(b.n - 1);
+        b.twin(first + random.nextInt(b.n - first));
+    }
+
+    // Arcs of a graph under construction. Undirected graphs use one edge for both arcs of a link, directed graphs
+    // one edge per arc. Every edge has a distance for PHD.
+    private static class Builder {
+        final Random random;
+        final boolean directed;
+        final Weights weights;
+
+        int n = 0;
+        int m = 0;
+
+        final IntArrayList tails = new IntArrayList();
+        final IntArrayList heads = new IntArrayList();
+        final IntArrayList edges = new IntArrayList();
+        final List<Double> arcWeights = new ArrayList<>();
+        final List<Double> edgeDistances = new ArrayList<>();
+
+        // Linked vertex pairs, parallel links are skipped like simplify() removes them
+        final Set<Long> linked = new HashSet<>();
+
+        Builder(final Random random, final boolean directed, final Weights weights) {
+            this.random = random;
+            this.directed = directed;
+            this.weights = weights;
+        }
+
+        int addVertex() {
+            return n++;
+        }
+
+        // Small integers and multiples of the resolution are summed exactly
+        double weight() {
+            switch (weights) {
+                case UNIFORM:
+                    return 1.0;
+                case FIXED_POINT:
+                    return (1 + random.nextInt(7)) * RESOLUTION;
+                default:
+                    return 1 + random.nextInt(4);
+            }
+        }
+
+        int addEdge(final double distance) {
+            edgeDistances.add(distance);
+            return m++;
+        }
+
+        void addArc(final int tail, final int head, final int edge, final double weight) {
+            tails.add(tail);
+            heads.add(head);
+            edges.add(edge);
+            arcWeights.add(weight);
+        }
+
+        // Arc from u to v and, if twoWay, back
+        void link(final int u, final int v, final boolean twoWay) {
+            if (u == v || !linked.add((long) Math.min(u, v) * Integer.MAX_VALUE + Math.max(u, v))) {
+                return;
+            }
+
+            if (!directed) {
+                final int e = addEdge(1 + random.nextInt(3));
+                final double weight = weight();
+
+                addArc(u, v, e, weight);
+                addArc(v, u, e, weight);
+                return;
+            }
+
+            addArc(u, v, addEdge(1 + random.nextInt(3)), weight());
+
+            if (twoWay) {
+                addArc(v, u, addEdge(1 + random.nextInt(3)), weight());
+            }
+        }
+
+        // New vertex with copies of the arcs of t, same neighbors, weights and distances
+        void twin(final int t) {
+            final int x = addVertex();
+            final Int2IntMap copies = new Int2IntOpenHashMap();
+            final int arcs = tails.size();
+
+            for (int i = 0; i < arcs; i++) {
+                final int tail = tails.getInt(i);
+                final int head = heads.getInt(i);
+
+                if (tail != t && head != t) {
+                    continue;
+                }
+
+                final int e = edges.getInt(i);
+
+                if (!copies.containsKey(e)) {
+                    copies.put(e, addEdge(edgeDistances.get(e)));
+                }
+
+                addArc(tail == t ? x : tail, head == t ? x : head, copies.get(e), arcWeights.get(i));
+            }
+        }
+
+        CsrGraph build() {
+            return CsrGraph.fromArcs(
+                    n,
+                    m,
+                    tails.toIntArray(),
+                    heads.toIntArray(),
+                    edges.toIntArray(),
+                    arcWeights.stream().mapToDouble(Double::doubleValue).toArray(),
+                    weights == Weights.FIXED_POINT ? new FixedPoint(RESOLUTION) : null
+            );
+        }
+
+        DoubleSparseFunction distance() {
+            return new DoubleArraySparseFunction(edgeDistances.stream().mapToDouble(Double::doubleValue).toArray());
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package highways.utils;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Random operation sequences on the heaps of the Dijkstra searches, checked against a PriorityQueue.
+// Keys are multiples of 0.5, so there are many equal keys, and zero keys are often given as -0.0.
+public class IndexedPriorityQueueTest {
+    private static final int SEQUENCES = 20;
+    private static final int OPERATIONS = 2000;
+    // Larger than the initial capacity, so the heaps grow
+    private static final int IDS = 40;
+    private static final int CAPACITY = 4;
+
+    @Test
+    public void daryHeap() {
+        final IndexedDaryHeap queue = new IndexedDaryHeap(4, CAPACITY);
+
+        for (int seed = 0; seed < SEQUENCES; seed++) {
+            check(queue, false, new Random(seed), "4-ary heap seed " + seed);
+        }
+    }
+
+    @Test
+    public void binaryHeap() {
+        final IndexedDaryHeap queue = new IndexedDaryHeap(2, CAPACITY);
+
+        for (int seed = 0; seed < SEQUENCES; seed++) {
+            check(queue, false, new Random(seed), "binary heap seed " + seed);
+        }
+    }
+
+    @Test
+    public void radixHeap() {
+        final RadixHeap queue = new RadixHeap(CAPACITY);
+
+        for (int seed = 0; seed < SEQUENCES; seed++) {
+            check(queue, true, new Random(seed), "radix heap seed " + seed);
+        }
+    }
+
+    @Test
+    public void radixHeapRejectsDecreaseOfUnqueuedIds() {
+        final RadixHeap queue = new RadixHeap(CAPACITY);
+        queue.insert(0, 3.0);
+        queue.insert(1, 2.0);
+        queue.insert(2, 4.0);
+        queue.poll();
+        queue.poll();
+
+        // 0 was polled with the same key, 3 was never queued and IDS is beyond the capacity
+        for (final int id: new int[]{0, 3, IDS}) {
+            try {
+                queue.decreaseKey(id, 3.0);
+                fail("Decreased the key of unqueued id " + id);
+            } catch (IllegalArgumentException e) {
+                assertEquals("Queue size", 1, queue.size());
+            }
+        }
+    }
+
+    // The same queue is reused for every sequence after clear(). The radix heap only gets keys that are not
+    // smaller than the last polled or peeked key and no updateKey or remove. The d-ary heap breaks ties by id,
+    // so its poll order is compared exactly, for the radix heap only the polled keys.
+    private static void check(final IndexedPriorityQueue queue, final boolean monotone, final Random random, final String name) {
+        final Reference expected = new Reference();
+        final IndexedDaryHeap dary = monotone ? null : (IndexedDaryHeap) queue;
+        double floor = monotone ? 0.0 : -1.0;
+
+        queue.clear();
+
+        for (int step = 0; step < OPERATIONS; step++) {
+            final int id = random.nextInt(IDS);
+            final String at = name + ", step " + step;
+
+            switch (random.nextInt(monotone ? 5 : 7)) {
+                case 0:
+                    if (expected.contains(id)) {
+                        final double key = lower(random, floor, expected.getKey(id));
+                        queue.decreaseKey(id, key);
+                        expected.put(id, key);
+                    } else {
+                        final double key = key(random, floor);
+                        queue.insert(id, key);
+                        expected.put(id, key);
+                    }
+                    break;
+                case 1: {
+                    final double key = expected.contains(id)
+                            ? lower(random, floor, expected.getKey(id))
+                            : key(random, floor);
+                    queue.insertOrDecrease(id, key);
+                    expected.put(id, key);
+                    break;
+                }
+                case 2:
+                case 3:
+                    if (!expected.isEmpty()) {
+                        final double key = poll(queue, expected, monotone, at);
+
+                        if (monotone) {
+                            floor = key;
+                        }
+                    }
+                    break;
+                case 4:
+                    if (random.nextInt(50) == 0) {
+                        queue.clear();
+                        expected.clear();
+                        floor = monotone ? 0.0 : -1.0;
+                    }
+                    break;
+                case 5:
+                    if (expected.contains(id)) {
+                        final double key = key(random, floor);
+                        dary.updateKey(id, key);
+                        expected.put(id, key);
+                    }
+                    break;
+                default:
+                    if (expected.contains(id)) {
+                        dary.remove(id);
+                        expected.remove(id);
+                    }
+                    break;
+            }
+
+            compare(queue, expected, monotone, at);
+
+            // Peeking moves the floor of the radix heap to the minimum
+            if (monotone && !expected.isEmpty()) {
+                floor = expected.peekKey();
+            }
+        }
+
+        while (!expected.isEmpty()) {
+            poll(queue, expected, monotone, name + ", draining");
+        }
+
+        assertTrue(name + ", drained", queue.isEmpty());
+    }
+
+    private static double poll(final IndexedPriorityQueue queue, final Reference expected, final boolean monotone, final String name) {
+        final double key = expected.peekKey();
+        final int top = queue.poll();
+
+        if (monotone) {
+            assertTrue(name + ", polled id " + top + " is queued", expected.contains(top));
+            assertEquals(name + ", polled key", key, expected.getKey(top), 0.0);
+            expected.remove(top);
+        } else {
+            assertEquals(name + ", polled id", expected.poll(), top);
+        }
+
+        return key;
+    }
+
+    private static void compare(final IndexedPriorityQueue queue, final Reference expected, final boolean monotone, final String name) {
+        assertEquals(name + ", size", expected.size(), queue.size());
+        assertEquals(name + ", empty", expected.isEmpty() ? 1 : 0, queue.isEmpty() ? 1 : 0);
+
+        for (int id = 0; id < IDS; id++) {
+            assertEquals(name + ", contains " + id, expected.contains(id) ? 1 : 0, queue.contains(id) ? 1 : 0);
+
+            if (expected.contains(id)) {
+                assertEquals(name + ", key of " + id, expected.getKey(id), queue.getKey(id), 0.0);
+            }
+        }
+
+        if (!expected.isEmpty()) {
+            assertEquals(name + ", top key", expected.peekKey(), queue.peekKey(), 0.0);
+
+            if (!monotone) {
+                assertEquals(name + ", top", expected.peek(), queue.peek());
+            }
+        }
+    }
+
+    // Multiple of 0.5 in [floor, floor + 1.5]
+    private static double key(final Random random, final double floor) {
+        return zero(random, floor + random.nextInt(4) * 0.5);
+    }
+
+    // Multiple of 0.5 in [max(floor, key - 1.0), key], often equal to key
+    private static double lower(final Random random, final double floor, final double key) {
+        final int steps = (int) Math.min(2, Math.round((key - floor) / 0.5));
+
+        return zero(random, key - random.nextInt(steps + 1) * 0.5);
+    }
+
+    private static double zero(final Random random, final double key) {
+        return key == 0.0 && random.nextBoolean() ? -0.0 : key;
+    }
+
+    // Keys by id and a PriorityQueue of the ids with the tie breaking of IndexedDaryHeap, -0.0 equals 0.0
+    private static class Reference {
+        final Map<Integer, Double> keys = new HashMap<>();
+        final PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> {
+            final double ka = keys.get(a);
+            final double kb = keys.get(b);
+
+            return ka < kb ? -1 : ka > kb ? 1 : Integer.compare(a, b);
+        });
+
+        boolean contains(final int id) {
+            return keys.containsKey(id);
+        }
+
+        double getKey(final int id) {
+            return keys.get(id);
+        }
+
+        void put(final int id, final double key) {
+            remove(id);
+            keys.put(id, key);
+            queue.add(id);
+        }
+
+        void remove(final int id) {
+            if (keys.containsKey(id)) {
+                queue.remove(id);
+                keys.remove(id);
+            }
+        }
+
+        int peek() {
+            return queue.peek();
+        }
+
+        double peekKey() {
+            return keys.get(queue.peek());
+        }
+
+        int poll() {
+            final int top = queue.poll();
+            keys.remove(top);
+            return top;
+        }
+
+        int size() {
+            return keys.size();
+        }
+
+        boolean isEmpty() {
+            return keys.isEmpty();
+        }
+
+        void clear() {
+            keys.clear();
+            queue.clear();
+        }
+    }
+}